@@ -0,0 +1,39 @@
+package org.dimdev.dimdoors.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dimdev.dimdoors.util.math.GridUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converts between pocket ids and grid positions, which is done for every pocket lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridUtilBenchmark {
+    private int num;
+
+    @Benchmark
+    public GridUtil.GridPos numToPos() {
+        this.num = this.num + 1 & 0xFFFFF;
+        return GridUtil.numToPos(this.num);
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        this.num = this.num + 1 & 0xFFFFF;
+        return GridUtil.posToNum(GridUtil.numToPos(this.num));
+    }
+}
@@ -0,0 +1,84 @@
+package org.dimdev.dimdoors.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dimdev.dimdoors.rift.targets.RandomTarget;
+import org.dimdev.dimdoors.util.math.MathUtil;
+import org.dimdev.dimdoors.util.math.SpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scores the link candidates near a rift with RandomTarget's weighting, using the same spatial
+ * index as the rift registry's available link index, with the settings of the default deeper dungeon destination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkSelectionBenchmark {
+    private static final double WEIGHT_MAXIMUM = 100;
+    private static final double COORD_FACTOR = 1;
+    private static final double POSITIVE_DEPTH_FACTOR = 160;
+    private static final double NEGATIVE_DEPTH_FACTOR = 10000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rifts;
+
+    @Param({"16"})
+    public double cutoffFactor; // The link search cutoff of the dungeon config, in multiples of the weight maximum
+
+    private SpatialIndex<Integer> index;
+    private float[] weights; // Floating or entrance weight of each rift
+    private Random random;
+    private int spread;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.random = new Random(0);
+        this.index = new SpatialIndex<>();
+        this.weights = new float[this.rifts];
+        this.spread = (int) Math.sqrt(this.rifts) * 100; // About one rift per 100x100 blocks
+        for (int i = 0; i < this.rifts; i++) {
+            this.index.put(i, this.random.nextInt(this.spread), this.random.nextInt(this.spread), this.random.nextInt(50));
+            this.weights[i] = this.random.nextBoolean() ? 1 : 0.5F;
+        }
+    }
+
+    @Benchmark
+    public Integer scoreCandidates() {
+        int x = this.random.nextInt(this.spread);
+        int z = this.random.nextInt(this.spread);
+        int depth = this.random.nextInt(50);
+
+        double cutoff = this.cutoffFactor * WEIGHT_MAXIMUM;
+        int coordRange = (int) Math.ceil(cutoff / COORD_FACTOR);
+        int depthRangeUp = (int) Math.ceil(cutoff / POSITIVE_DEPTH_FACTOR);
+        int depthRangeDown = (int) Math.ceil(cutoff / NEGATIVE_DEPTH_FACTOR);
+
+        Map<Integer, Float> weights = new HashMap<>();
+        weights.put(null, 0.1F);
+        this.index.forEachNear(x, z, coordRange, depth - depthRangeDown, depth + depthRangeUp, (rift, otherX, otherZ, otherDepth) -> {
+            double weight = RandomTarget.LinkWeight.of(this.weights[rift], otherX - x, otherZ - z, otherDepth - depth,
+                    WEIGHT_MAXIMUM, COORD_FACTOR, POSITIVE_DEPTH_FACTOR, NEGATIVE_DEPTH_FACTOR, cutoff);
+            if (weight < 0) return;
+            weights.put(rift, (float) weight);
+        });
+        return MathUtil.weightedRandom(weights, this.random);
+    }
+}
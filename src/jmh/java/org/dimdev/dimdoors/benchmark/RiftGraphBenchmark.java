@@ -0,0 +1,101 @@
+package org.dimdev.dimdoors.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.dimdev.dimdoors.util.CompactGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds, removes and links rifts the way the rift registry does: a vertex in the graph plus
+ * an entry in the packed position -> vertex id map of its world. These are the two data
+ * structures alone, RiftRegistryBenchmark measures the same operations on the registry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RiftGraphBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rifts;
+
+    private CompactGraph<Object> graph;
+    private Long2IntMap locations;
+    private long[] positions;
+    private int[] ids;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.random = new Random(0);
+        this.graph = new CompactGraph<>(this.rifts);
+        this.locations = new Long2IntOpenHashMap(this.rifts);
+        this.locations.defaultReturnValue(-1);
+        this.positions = new long[this.rifts];
+        this.ids = new int[this.rifts];
+
+        for (int i = 0; i < this.rifts; i++) {
+            long pos = this.randomPosition();
+            while (this.locations.containsKey(pos)) pos = this.randomPosition();
+            int id = this.graph.addVertex(new Object());
+            this.locations.put(pos, id);
+            this.positions[i] = pos;
+            this.ids[i] = id;
+        }
+
+        // Most rifts link to one other rift, and some back
+        for (int i = 0; i < this.rifts; i++) {
+            int to = this.ids[this.random.nextInt(this.rifts)];
+            this.graph.addEdge(this.ids[i], to);
+            if (this.random.nextBoolean()) this.graph.addEdge(to, this.ids[i]);
+        }
+    }
+
+    private long randomPosition() {
+        return this.random.nextLong() & 0xFFFFFFFFFFFFL; // Any packed BlockPos will do
+    }
+
+    @Benchmark
+    public int addAndRemoveRift() {
+        long pos = this.randomPosition();
+        int id = this.graph.addVertex(pos);
+        this.locations.put(pos, id);
+        int neighbour = this.ids[this.random.nextInt(this.rifts)];
+        this.graph.addEdge(id, neighbour);
+        this.graph.addEdge(neighbour, id);
+
+        this.locations.remove(pos);
+        this.graph.removeVertex(id);
+        return id;
+    }
+
+    @Benchmark
+    public boolean addAndRemoveLink() {
+        int from = this.ids[this.random.nextInt(this.rifts)];
+        int to = this.ids[this.random.nextInt(this.rifts)];
+        boolean added = this.graph.addEdge(from, to);
+        if (added) this.graph.removeEdge(from, to);
+        return added;
+    }
+
+    @Benchmark
+    public int lookUpTargets() {
+        int id = this.locations.get(this.positions[this.random.nextInt(this.rifts)]);
+        return this.graph.targets(id).length + this.graph.sources(id).length;
+    }
+}
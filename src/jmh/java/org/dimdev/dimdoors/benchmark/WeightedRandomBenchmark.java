@@ -0,0 +1,60 @@
+package org.dimdev.dimdoors.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dimdev.dimdoors.util.math.MathUtil;
+import org.dimdev.dimdoors.util.math.WeightedSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Picks a weighted random value once from a map, as link selection does, and repeatedly
+ * from a prepared sampler, as template selection does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeightedRandomBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int values;
+
+    private Map<Integer, Float> weights;
+    private WeightedSampler<Integer> sampler;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.random = new Random(0);
+        this.weights = new HashMap<>();
+        for (int i = 0; i < this.values; i++) {
+            this.weights.put(i, this.random.nextFloat());
+        }
+        this.sampler = WeightedSampler.of(this.weights);
+    }
+
+    @Benchmark
+    public Integer weightedRandom() {
+        return MathUtil.weightedRandom(this.weights, this.random);
+    }
+
+    @Benchmark
+    public Integer sample() {
+        return this.sampler.sample(this.random);
+    }
+}
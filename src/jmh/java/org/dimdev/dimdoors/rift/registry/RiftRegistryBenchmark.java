@@ -0,0 +1,134 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dimdev.dimdoors.util.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+/**
+ * Adds, links and removes rifts through the rift registry itself. There is no server, so the
+ * registry isn't read from the overworld's data, its subregistries are never saved, rifts
+ * aren't recolored or notified and no rift is in a pocket. The benchmark is in the registry's
+ * package to set it up that way.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RiftRegistryBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int rifts;
+
+    private RiftRegistry registry;
+    private Location[] locations; // The first half is linked, the second half only while linking
+    private Random random;
+
+    private static class BenchmarkRiftRegistry extends RiftRegistry {
+        BenchmarkRiftRegistry() {
+            super(null);
+        }
+
+        @Override
+        public RiftSubregistry getSubregistry(RegistryKey<World> world) {
+            return this.subregistries.computeIfAbsent(world, RiftSubregistry::new);
+        }
+
+        @Override
+        protected int getPocketId(Location location) {
+            return -1;
+        }
+
+        @Override
+        public void queueColorUpdate(Location location, boolean updateSources) {
+        }
+
+        @Override
+        void notifyRift(Location location, Location gone, boolean targetGone) {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Bootstrap.initialize(); // Rifts are registry vertices, whose types are in a Minecraft registry
+        this.random = new Random(0);
+        this.registry = new BenchmarkRiftRegistry();
+        RiftRegistry.setInstance(this.registry);
+
+        this.locations = new Location[this.rifts];
+        for (int i = 0; i < this.rifts; i++) {
+            this.locations[i] = this.unusedLocation();
+            this.registry.addRift(this.locations[i]);
+        }
+
+        // Most rifts link to one other rift, and some back
+        int linked = this.rifts / 2;
+        for (int i = 0; i < linked; i++) {
+            Location to = this.locations[this.random.nextInt(linked)];
+            this.registry.addLink(this.locations[i], to);
+            if (this.random.nextBoolean()) this.registry.addLink(to, this.locations[i]);
+        }
+        this.endTick();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RiftRegistry.clearInstance();
+    }
+
+    private Location unusedLocation() {
+        Location location;
+        do {
+            location = new Location(World.OVERWORLD, new BlockPos(this.random.nextInt(60_000_000) - 30_000_000, this.random.nextInt(256), this.random.nextInt(60_000_000) - 30_000_000));
+        } while (this.registry.isRegistered(location));
+        return location;
+    }
+
+    /**
+     * Forgets the changes to save and snapshot, as saving and publishing the snapshot would.
+     */
+    private void endTick() {
+        this.registry.snapshotChangedRifts.clear();
+        this.registry.snapshotChangedPockets.clear();
+        for (RiftSubregistry subregistry : this.registry.subregistries.values()) subregistry.clearChanges();
+    }
+
+    @Benchmark
+    public void addAndRemoveRift() {
+        Location location = this.unusedLocation();
+        Location neighbour = this.locations[this.random.nextInt(this.rifts / 2)];
+        this.registry.addRift(location);
+        this.registry.addLink(location, neighbour);
+        this.registry.addLink(neighbour, location);
+        this.registry.removeRift(location);
+        this.endTick();
+    }
+
+    @Benchmark
+    public void addAndRemoveLink() {
+        Location from = this.locations[this.random.nextInt(this.rifts)];
+        Location to = this.locations[this.rifts / 2 + this.random.nextInt(this.rifts - this.rifts / 2)];
+        this.registry.addLink(from, to);
+        this.registry.removeLink(from, to);
+        this.endTick();
+    }
+}
@@ -7,14 +7,21 @@ import org.dimdev.dimdoors.block.entity.ModBlockEntityTypes;
 import org.dimdev.dimdoors.command.ModCommands;
 import org.dimdev.dimdoors.entity.ModEntityTypes;
 import org.dimdev.dimdoors.item.ModItems;
+import org.dimdev.dimdoors.pockets.PocketPool;
 import org.dimdev.dimdoors.pockets.SchematicHandler;
 import org.dimdev.dimdoors.pockets.SchematicV2Handler;
+import org.dimdev.dimdoors.rift.registry.RiftRegistry;
 import org.dimdev.dimdoors.rift.targets.Targets;
 import org.dimdev.dimdoors.sound.ModSoundEvents;
 import org.dimdev.dimdoors.util.schematic.v2.SchematicTest;
 import org.dimdev.dimdoors.world.ModBiomes;
 import org.dimdev.dimdoors.world.ModDimensions;
 import org.dimdev.dimdoors.world.feature.ModFeatures;
+import org.dimdev.dimdoors.world.pocket.PocketChunkManager;
+import org.dimdev.dimdoors.world.pocket.PocketCollector;
+import org.dimdev.dimdoors.world.pocket.PocketRegistry;
+import org.dimdev.dimdoors.world.pocket.PocketRepainter;
+import org.dimdev.dimdoors.world.pocket.PrivatePocketData;
 import org.jetbrains.annotations.NotNull;
 
 import net.minecraft.server.MinecraftServer;
@@ -24,13 +31,17 @@ import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.loader.api.FabricLoader;
 
 public class DimensionalDoorsInitializer implements ModInitializer {
     public static final Identifier MONOLITH_PARTICLE_PACKET = new Identifier("dimdoors", "monolith_particle_packet");
 
     private static MinecraftServer server;
+    private static PocketCollector pocketCollector;
+    private static PocketChunkManager pocketChunkManager;
 
     @NotNull
     public static MinecraftServer getServer() {
@@ -44,6 +55,13 @@ public class DimensionalDoorsInitializer implements ModInitializer {
         return getServer().getWorld(key);
     }
 
+    /**
+     * @return The chunk manager of the pocket worlds, or null if the server isn't running
+     */
+    public static PocketChunkManager getPocketChunkManager() {
+        return pocketChunkManager;
+    }
+
     @Override
     public void onInitialize() {
         ServerLifecycleEvents.SERVER_STARTING.register((minecraftServer) -> {
@@ -57,6 +75,42 @@ public class DimensionalDoorsInitializer implements ModInitializer {
             }
         });
 
+        // The registries are looked up once, and forgotten when the server stops
+        ServerLifecycleEvents.SERVER_STARTED.register(minecraftServer -> {
+            RiftRegistry.instance();
+            PrivatePocketData.instance();
+            PocketRegistry.getInstance(ModDimensions.PERSONAL);
+            PocketRegistry.getInstance(ModDimensions.PUBLIC);
+            PocketRegistry.getInstance(ModDimensions.DUNGEON);
+            pocketCollector = new PocketCollector();
+            pocketChunkManager = new PocketChunkManager();
+        });
+        ServerLifecycleEvents.SERVER_STOPPING.register(minecraftServer -> {
+            if (pocketCollector != null) pocketCollector.prepareRegionDeletion();
+            if (pocketChunkManager != null) pocketChunkManager.clear();
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(minecraftServer -> {
+            if (pocketCollector != null) pocketCollector.deleteRegions(minecraftServer);
+            pocketCollector = null;
+            pocketChunkManager = null;
+            RiftRegistry.clearInstance();
+            PrivatePocketData.clearInstance();
+            PocketRegistry.clearInstances();
+        });
+
+        ServerTickEvents.END_SERVER_TICK.register(minecraftServer -> {
+            RiftRegistry registry = RiftRegistry.instance();
+            registry.commitRegistrations();
+            registry.deliverNotifications();
+            registry.updateColors();
+            registry.publishSnapshot();
+            if (pocketCollector != null) pocketCollector.tick(minecraftServer);
+            PocketPool.tick(minecraftServer);
+            if (pocketChunkManager != null) pocketChunkManager.tick(minecraftServer);
+            PocketRepainter.tick();
+        });
+        ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> RiftRegistry.instance().chunkLoaded(world, chunk.getPos()));
+
         ModBlocks.init();
         ModItems.init();
         ModFeatures.init();
@@ -85,7 +85,8 @@ public final class ModConfig {
                 Codec.INT.fieldOf("depthSpreadFactor").forGetter((general) -> general.depthSpreadFactor),
                 Codec.BOOL.fieldOf("useEnderPearlsInCrafting").forGetter((general) -> general.useEnderPearlsInCrafting),
                 Codec.DOUBLE.fieldOf("endermanSpawnChance").forGetter((general) -> general.endermanSpawnChance),
-                Codec.DOUBLE.fieldOf("endermanAggressiveChance").forGetter((general) -> general.endermanAggressiveChance)
+                Codec.DOUBLE.fieldOf("endermanAggressiveChance").forGetter((general) -> general.endermanAggressiveChance),
+                Codec.INT.optionalFieldOf("riftRegistryFormat", 2).forGetter((general) -> general.riftRegistryFormat)
         ).apply(instance, General::create));
 
         public boolean closeDoorBehind = false;
@@ -97,8 +98,9 @@ public final class ModConfig {
         public boolean useEnderPearlsInCrafting = false;
         public double endermanSpawnChance = 0.001;
         public double endermanAggressiveChance = 0.5;
+        public int riftRegistryFormat = 2; // Format version the rift registry is saved in, 1 to stay readable by older versions
 
-        public static General create(boolean closeDoorBehind, double teleportOffset, boolean riftBoundingBoxInCreative, double riftCloseSpeed, double riftGrowthSpeed, int depthSpreadFactor, boolean useEnderPearlsInCrafting, double endermanSpawnChance, double endermanAggressiveChance) {
+        public static General create(boolean closeDoorBehind, double teleportOffset, boolean riftBoundingBoxInCreative, double riftCloseSpeed, double riftGrowthSpeed, int depthSpreadFactor, boolean useEnderPearlsInCrafting, double endermanSpawnChance, double endermanAggressiveChance, int riftRegistryFormat) {
             General general = new General();
             general.closeDoorBehind = closeDoorBehind;
             general.teleportOffset = teleportOffset;
@@ -109,6 +111,7 @@ public final class ModConfig {
             general.useEnderPearlsInCrafting = useEnderPearlsInCrafting;
             general.endermanSpawnChance = endermanSpawnChance;
             general.endermanAggressiveChance = endermanAggressiveChance;
+            general.riftRegistryFormat = riftRegistryFormat;
             return general;
         }
     }
@@ -120,7 +123,15 @@ public final class ModConfig {
                 Codec.INT.fieldOf("privatePocketSize").forGetter((pockets) -> pockets.privatePocketSize),
                 Codec.INT.fieldOf("publicPocketSize").forGetter((pockets) -> pockets.publicPocketSize),
                 Codec.BOOL.fieldOf("loadAllSchematics").forGetter((pockets) -> pockets.loadAllSchematics),
-                Codec.INT.fieldOf("cachedSchematics").forGetter((pockets) -> pockets.cachedSchematics)
+                Codec.INT.fieldOf("cachedSchematics").forGetter((pockets) -> pockets.cachedSchematics),
+                Codec.INT.optionalFieldOf("pocketCollectionBudget", 500).forGetter((pockets) -> pockets.pocketCollectionBudget),
+                Codec.INT.optionalFieldOf("pocketCollectionInterval", 6000).forGetter((pockets) -> pockets.pocketCollectionInterval),
+                Codec.INT.optionalFieldOf("privatePocketPoolSize", 2).forGetter((pockets) -> pockets.privatePocketPoolSize),
+                Codec.INT.optionalFieldOf("publicPocketPoolSize", 2).forGetter((pockets) -> pockets.publicPocketPoolSize),
+                Codec.INT.optionalFieldOf("dungeonPocketPoolSize", 4).forGetter((pockets) -> pockets.dungeonPocketPoolSize),
+                Codec.INT.optionalFieldOf("pocketHibernationInterval", 20).forGetter((pockets) -> pockets.pocketHibernationInterval),
+                Codec.BOOL.optionalFieldOf("freezeOfflinePockets", true).forGetter((pockets) -> pockets.freezeOfflinePockets),
+                Codec.INT.optionalFieldOf("pocketRepaintBudget", 2).forGetter((pockets) -> pockets.pocketRepaintBudget)
         ).apply(instance, Pockets::create));
         public int pocketGridSize = 32;
         public int maxPocketSize = 15;
@@ -128,8 +139,16 @@ public final class ModConfig {
         public int publicPocketSize = 1;
         public boolean loadAllSchematics = false;
         public int cachedSchematics = 10;
+        public int pocketCollectionBudget = 500; // Microseconds per tick spent looking for unused pockets, 0 to disable
+        public int pocketCollectionInterval = 6000; // Ticks between two searches for unused pockets
+        public int privatePocketPoolSize = 2; // Private pockets placed ahead of time, 0 to place them when they are entered
+        public int publicPocketPoolSize = 2;
+        public int dungeonPocketPoolSize = 4; // Only for the first dungeon depth
+        public int pocketHibernationInterval = 20; // Ticks between two updates of the pockets players are in, 0 to leave the chunks to vanilla
+        public boolean freezeOfflinePockets = true;
+        public int pocketRepaintBudget = 2; // Milliseconds per tick spent repainting the walls of dyed pockets
 
-        public static Pockets create(int pocketGridSize, int maxPocketSize, int privatePocketSize, int publicPocketSize, boolean loadAllSchematics, int cachedSchematics) {
+        public static Pockets create(int pocketGridSize, int maxPocketSize, int privatePocketSize, int publicPocketSize, boolean loadAllSchematics, int cachedSchematics, int pocketCollectionBudget, int pocketCollectionInterval, int privatePocketPoolSize, int publicPocketPoolSize, int dungeonPocketPoolSize, int pocketHibernationInterval, boolean freezeOfflinePockets, int pocketRepaintBudget) {
             Pockets pockets = new Pockets();
             pockets.pocketGridSize = pocketGridSize;
             pockets.maxPocketSize = maxPocketSize;
@@ -137,6 +156,14 @@ public final class ModConfig {
             pockets.publicPocketSize = publicPocketSize;
             pockets.loadAllSchematics = loadAllSchematics;
             pockets.cachedSchematics = cachedSchematics;
+            pockets.pocketCollectionBudget = pocketCollectionBudget;
+            pockets.pocketCollectionInterval = pocketCollectionInterval;
+            pockets.privatePocketPoolSize = privatePocketPoolSize;
+            pockets.publicPocketPoolSize = publicPocketPoolSize;
+            pockets.dungeonPocketPoolSize = dungeonPocketPoolSize;
+            pockets.pocketHibernationInterval = pocketHibernationInterval;
+            pockets.freezeOfflinePockets = freezeOfflinePockets;
+            pockets.pocketRepaintBudget = pocketRepaintBudget;
             return pockets;
         }
     }
@@ -165,13 +192,16 @@ public final class ModConfig {
 
     public static class Dungeons {
         public static final Codec<Dungeons> CODEC = RecordCodecBuilder.create(instance -> instance.group(
-                Codec.INT.fieldOf("maxDungeonDepth").forGetter((dungeons) -> dungeons.maxDungeonDepth)
+                Codec.INT.fieldOf("maxDungeonDepth").forGetter((dungeons) -> dungeons.maxDungeonDepth),
+                Codec.DOUBLE.optionalFieldOf("linkSearchCutoff", 16D).forGetter((dungeons) -> dungeons.linkSearchCutoff)
         ).apply(instance, Dungeons::create));
         public int maxDungeonDepth = 50;
+        public double linkSearchCutoff = 16; // Multiple of a rift's weightMaximum beyond which other rifts are ignored, 0 to disable
 
-        public static Dungeons create(int maxDungeonDepth) {
+        public static Dungeons create(int maxDungeonDepth, double linkSearchCutoff) {
             Dungeons dungeons = new Dungeons();
             dungeons.maxDungeonDepth = maxDungeonDepth;
+            dungeons.linkSearchCutoff = linkSearchCutoff;
             return dungeons;
         }
     }
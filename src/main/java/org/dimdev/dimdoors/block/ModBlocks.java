@@ -1,5 +1,8 @@
 package org.dimdev.dimdoors.block;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import net.minecraft.block.Block;
 import net.minecraft.block.Material;
 import net.minecraft.block.MaterialColor;
@@ -13,6 +16,10 @@ import net.fabricmc.fabric.api.blockrenderlayer.v1.BlockRenderLayerMap;
 import net.fabricmc.fabric.api.object.builder.v1.block.FabricBlockSettings;
 
 public final class ModBlocks {
+    // Filled while the fabric blocks are registered, so these have to come first
+    private static final Map<DyeColor, Block> FABRIC_BLOCKS = new EnumMap<>(DyeColor.class);
+    private static final Map<DyeColor, Block> ANCIENT_FABRIC_BLOCKS = new EnumMap<>(DyeColor.class);
+
     public static final Block GOLD_DOOR = register("dimdoors:gold_door", new DoorBlock(FabricBlockSettings.of(Material.METAL, MaterialColor.GOLD).nonOpaque()));
     public static final Block QUARTZ_DOOR = register("dimdoors:quartz_door", new DoorBlock(FabricBlockSettings.of(Material.STONE, MaterialColor.QUARTZ).nonOpaque()));
     public static final Block OAK_DIMENSIONAL_DOOR = register("dimdoors:oak_dimensional_door", new DimensionalDoorBlock(FabricBlockSettings.of(Material.WOOD, MaterialColor.WOOD).nonOpaque().lightLevel(state -> ((DimensionalDoorBlock) state.getBlock()).hasBlockEntity(state) ? 10 : 0)));
@@ -68,11 +75,31 @@ public final class ModBlocks {
     }
 
     public static Block registerAncientFabric(String id, DyeColor color) {
-        return register(id, new Block(FabricBlockSettings.of(Material.STONE, color).strength(-1.0F, 3600000.0F).dropsNothing()));
+        Block block = register(id, new Block(FabricBlockSettings.of(Material.STONE, color).strength(-1.0F, 3600000.0F).dropsNothing()));
+        ANCIENT_FABRIC_BLOCKS.put(color, block);
+        return block;
     }
 
     private static Block registerFabric(String id, DyeColor color) {
-        return register(id, new FabricBlock(color));
+        Block block = register(id, new FabricBlock(color));
+        FABRIC_BLOCKS.put(color, block);
+        return block;
+    }
+
+    public static Block getFabric(DyeColor color) {
+        return FABRIC_BLOCKS.get(color);
+    }
+
+    public static Block getAncientFabric(DyeColor color) {
+        return ANCIENT_FABRIC_BLOCKS.get(color);
+    }
+
+    public static boolean isFabric(Block block) {
+        return FABRIC_BLOCKS.containsValue(block);
+    }
+
+    public static boolean isAncientFabric(Block block) {
+        return ANCIENT_FABRIC_BLOCKS.containsValue(block);
     }
 
     public static void init() {
@@ -7,7 +7,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.dimdev.dimdoors.pockets.PocketTemplate;
 import org.dimdev.dimdoors.rift.registry.LinkProperties;
-import org.dimdev.dimdoors.rift.registry.Rift;
 import org.dimdev.dimdoors.rift.registry.RiftRegistry;
 import org.dimdev.dimdoors.rift.targets.EntityTarget;
 import org.dimdev.dimdoors.rift.targets.MessageTarget;
@@ -139,9 +138,7 @@ public abstract class RiftBlockEntity extends BlockEntity implements BlockEntity
 
     public void updateType() {
         if (!this.isRegistered()) return;
-        Rift rift = RiftRegistry.instance().getRift(new Location((ServerWorld) this.world, this.pos));
-        rift.isDetached = this.isDetached();
-        rift.markDirty();
+        RiftRegistry.instance().setDetached(new Location((ServerWorld) this.world, this.pos), this.isDetached());
     }
 
     public void handleTargetGone(Location location) {
@@ -188,6 +185,10 @@ public abstract class RiftBlockEntity extends BlockEntity implements BlockEntity
 
     public void updateColor() {
         if (this.data.isForcedColor()) return;
+        if (this.world != null && RiftRegistry.instance().isBatching()) {
+            RiftRegistry.instance().queueColorUpdate(new Location((ServerWorld) this.world, this.pos), false);
+            return;
+        }
         if (!this.isRegistered()) {
             this.data.setColor(new RGBA(0, 0, 0, 1));
         } else if (this.data.getDestination() == VirtualTarget.NoneTarget.DUMMY) {
@@ -10,6 +10,8 @@ public final class ModCommands {
             SchematicV2Command.register(dispatcher);
             SchematicCommand.register(dispatcher);
             DimdoorsConfigCommand.register(dispatcher);
+            StatsCommand.register(dispatcher);
+            PocketTickCommand.register(dispatcher);
         });
     }
 }
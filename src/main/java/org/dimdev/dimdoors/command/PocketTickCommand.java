@@ -0,0 +1,59 @@
+package org.dimdev.dimdoors.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import org.dimdev.dimdoors.DimensionalDoorsInitializer;
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.pocket.Pocket;
+import org.dimdev.dimdoors.world.pocket.PocketChunkManager;
+import org.dimdev.dimdoors.world.pocket.PocketRegistry;
+
+import net.minecraft.command.CommandException;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.TranslatableText;
+
+import static net.minecraft.server.command.CommandManager.argument;
+import static net.minecraft.server.command.CommandManager.literal;
+
+public class PocketTickCommand {
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(
+                literal("dimdoors")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(
+                                literal("alwaystick")
+                                        .executes(ctx -> alwaysTick(ctx, null))
+                                        .then(
+                                                argument("value", BoolArgumentType.bool())
+                                                        .executes(ctx -> alwaysTick(ctx, BoolArgumentType.getBool(ctx, "value")))
+                                        )
+                        )
+        );
+    }
+
+    private static int alwaysTick(CommandContext<ServerCommandSource> ctx, Boolean value) throws CommandSyntaxException {
+        ServerPlayerEntity player = ctx.getSource().getPlayer();
+
+        if (!ModDimensions.isDimDoorsPocketDimension(player.world)) {
+            throw new CommandException(new TranslatableText("commands.generic.dimdoors.not_in_pocket_dim"));
+        }
+
+        PocketRegistry registry = PocketRegistry.getInstance(player.world.getRegistryKey());
+        Pocket pocket = registry.findPocketContaining(player.getBlockPos());
+        if (pocket == null) {
+            throw new CommandException(new TranslatableText("commands.generic.dimdoors.not_in_pocket"));
+        }
+
+        if (value != null && pocket.alwaysTick != value) {
+            pocket.alwaysTick = value;
+            registry.markDirty();
+            PocketChunkManager pocketChunkManager = DimensionalDoorsInitializer.getPocketChunkManager();
+            if (pocketChunkManager != null) pocketChunkManager.pocketChanged(pocket);
+        }
+        ctx.getSource().sendFeedback(new TranslatableText(pocket.alwaysTick ? "commands.dimdoors.alwaystick.enabled" : "commands.dimdoors.alwaystick.disabled", pocket.id), false);
+        return pocket.alwaysTick ? 1 : 0;
+    }
+}
@@ -0,0 +1,38 @@
+package org.dimdev.dimdoors.command;
+
+import java.util.List;
+
+import com.mojang.brigadier.CommandDispatcher;
+import org.dimdev.dimdoors.util.Metrics;
+
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.LiteralText;
+
+import static net.minecraft.server.command.CommandManager.literal;
+
+public class StatsCommand {
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(
+                literal("dimdoors")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(
+                                literal("stats")
+                                        .executes(ctx -> {
+                                            List<String> lines = Metrics.dump();
+                                            for (String line : lines) {
+                                                ctx.getSource().sendFeedback(new LiteralText(line), false);
+                                            }
+                                            return lines.size();
+                                        })
+                                        .then(
+                                                literal("reset")
+                                                        .executes(ctx -> {
+                                                            Metrics.reset();
+                                                            ctx.getSource().sendFeedback(new LiteralText("Reset the counters and timers"), false);
+                                                            return 1;
+                                                        })
+                                        )
+                        )
+        );
+    }
+}
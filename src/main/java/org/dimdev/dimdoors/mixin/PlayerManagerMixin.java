@@ -0,0 +1,35 @@
+package org.dimdev.dimdoors.mixin;
+
+import org.dimdev.dimdoors.DimensionalDoorsInitializer;
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.pocket.PocketChunkManager;
+import org.dimdev.dimdoors.world.pocket.PocketRegistry;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import net.minecraft.network.ClientConnection;
+import net.minecraft.server.PlayerManager;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+@Mixin(PlayerManager.class)
+public abstract class PlayerManagerMixin {
+    @Inject(method = "remove", at = @At("HEAD"))
+    public void rememberLogoutPocket(ServerPlayerEntity player, CallbackInfo ci) {
+        if (ModDimensions.isDimDoorsPocketDimension(player.world)) {
+            PocketRegistry.getInstance(player.world.getRegistryKey()).playerLoggedOut(player.getUuid(), player.getBlockPos());
+        }
+        PocketChunkManager pocketChunkManager = DimensionalDoorsInitializer.getPocketChunkManager();
+        if (pocketChunkManager != null) pocketChunkManager.playerLoggedOut(player);
+    }
+
+    @Inject(method = "onPlayerConnect", at = @At("TAIL"))
+    public void forgetLogoutPocket(ClientConnection connection, ServerPlayerEntity player, CallbackInfo ci) {
+        PocketRegistry.getInstance(ModDimensions.PERSONAL).playerLoggedIn(player.getUuid());
+        PocketRegistry.getInstance(ModDimensions.PUBLIC).playerLoggedIn(player.getUuid());
+        PocketRegistry.getInstance(ModDimensions.DUNGEON).playerLoggedIn(player.getUuid());
+        PocketChunkManager pocketChunkManager = DimensionalDoorsInitializer.getPocketChunkManager();
+        if (pocketChunkManager != null) pocketChunkManager.playerLoggedIn(player);
+    }
+}
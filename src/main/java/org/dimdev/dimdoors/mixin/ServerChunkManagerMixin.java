@@ -0,0 +1,36 @@
+package org.dimdev.dimdoors.mixin;
+
+import org.dimdev.dimdoors.world.pocket.PocketChunkManager;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+
+@Mixin(ServerChunkManager.class)
+public abstract class ServerChunkManagerMixin {
+    @Shadow
+    @Final
+    private ServerWorld world;
+
+    @Inject(method = "shouldTickEntity", at = @At("HEAD"), cancellable = true)
+    public void skipFrozenPocketEntity(Entity entity, CallbackInfoReturnable<Boolean> cir) {
+        if (PocketChunkManager.isFrozen(this.world, MathHelper.floor(entity.getX()) >> 4, MathHelper.floor(entity.getZ()) >> 4)) {
+            cir.setReturnValue(false);
+        }
+    }
+
+    @Inject(method = "shouldTickBlock", at = @At("HEAD"), cancellable = true)
+    public void skipFrozenPocketBlock(BlockPos pos, CallbackInfoReturnable<Boolean> cir) {
+        if (PocketChunkManager.isFrozen(this.world, pos.getX() >> 4, pos.getZ() >> 4)) {
+            cir.setReturnValue(false);
+        }
+    }
+}
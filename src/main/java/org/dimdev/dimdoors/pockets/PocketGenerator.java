@@ -22,8 +22,8 @@ public final class PocketGenerator {
         LOGGER.info("Generating pocket from template " + pocketTemplate.getId() + " at virtual location " + virtualLocation);
 
         Pocket pocket = PocketRegistry.getInstance(world.getRegistryKey()).newPocket();
+        pocket.setVirtualLocation(virtualLocation);
         pocketTemplate.place(pocket, setup);
-        pocket.virtualLocation = virtualLocation;
         return pocket;
     }
 
@@ -31,8 +31,8 @@ public final class PocketGenerator {
         LOGGER.info("Generating pocket from template " + pocketTemplate.getId() + " at virtual location " + virtualLocation);
 
         Pocket pocket = PocketRegistry.getInstance(world.getRegistryKey()).newPocket();
+        pocket.setVirtualLocation(virtualLocation);
         pocketTemplate.place(pocket);
-        pocket.virtualLocation = virtualLocation;
         return pocket;
     }
 
@@ -69,6 +69,8 @@ public final class PocketGenerator {
     }
 
     public static Pocket generatePrivatePocketV2(VirtualLocation virtualLocation) {
+        Pocket pooled = PocketPool.take(ModDimensions.PERSONAL, virtualLocation, null, null);
+        if (pooled != null) return pooled;
         PocketTemplateV2 pocketTemplate = SchematicV2Handler.getInstance().getRandomPrivatePocket();
         return generateV2PocketFromTemplate(DimensionalDoorsInitializer.getWorld(ModDimensions.PERSONAL), pocketTemplate, virtualLocation, true);
     }
@@ -80,6 +82,8 @@ public final class PocketGenerator {
     }
 
     public static Pocket generatePublicPocketV2(VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
+        Pocket pooled = PocketPool.take(ModDimensions.PUBLIC, virtualLocation, linkTo, linkProperties);
+        if (pooled != null) return pooled;
         PocketTemplateV2 pocketTemplate = SchematicV2Handler.getInstance().getRandomPublicPocket();
         return generateV2PocketFromTemplate(DimensionalDoorsInitializer.getWorld(ModDimensions.PUBLIC), pocketTemplate, virtualLocation, linkTo, linkProperties);
     }
@@ -95,6 +99,8 @@ public final class PocketGenerator {
         float netherProbability = DimensionalDoorsInitializer.getWorld(virtualLocation.getWorld()).getDimension().isUltrawarm() ? 1 : (float) depth / 200; // TODO: improve nether probability
         Random random = new Random();
         String group = random.nextFloat() < netherProbability ? "nether" : "ruins";
+        Pocket pooled = PocketPool.takeDungeon(group, virtualLocation, linkTo, linkProperties);
+        if (pooled != null) return pooled;
         PocketTemplate pocketTemplate = SchematicHandler.INSTANCE.getRandomTemplate(group, depth, ModConfig.INSTANCE.getPocketsConfig().maxPocketSize, false);
 
         return generatePocketFromTemplate(DimensionalDoorsInitializer.getWorld(ModDimensions.DUNGEON), pocketTemplate, virtualLocation, linkTo, linkProperties);
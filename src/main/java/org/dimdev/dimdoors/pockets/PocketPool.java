@@ -0,0 +1,127 @@
+package org.dimdev.dimdoors.pockets;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.rift.registry.LinkProperties;
+import org.dimdev.dimdoors.rift.targets.VirtualTarget;
+import org.dimdev.dimdoors.util.Metrics;
+import org.dimdev.dimdoors.world.ModDimensions;
+import org.dimdev.dimdoors.world.pocket.Pocket;
+import org.dimdev.dimdoors.world.pocket.PocketRegistry;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+/**
+ * Places private, public and first depth dungeon pockets ahead of time, while the server has
+ * time to spare, so that entering a new pocket only has to set up its rifts and loot instead of
+ * placing the whole schematic. The pool is saved with the pocket registries.
+ */
+public final class PocketPool {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int FILL_INTERVAL = 20; // Ticks between two pockets placed for the pool
+    private static final float IDLE_TICK_TIME = 25; // Average milliseconds per tick below which the server has time to spare
+    private static final int DUNGEON_DEPTH = 1; // Depth of the pooled dungeon pockets
+    private static final String DUNGEON_GROUP = "ruins";
+    private static final Metrics.Counter HITS = Metrics.counter("pocket_pool.hits");
+    private static final Metrics.Counter MISSES = Metrics.counter("pocket_pool.misses");
+    private static final Metrics.Timer FILL_TIME = Metrics.timer("pocket_pool.fill");
+
+    private PocketPool() {
+    }
+
+    /**
+     * Places one pocket for the first pool that isn't full, if the server isn't busy.
+     */
+    public static void tick(MinecraftServer server) {
+        if (server.getTicks() % FILL_INTERVAL != 0 || server.getTickTime() > IDLE_TICK_TIME) return;
+
+        ModConfig.Pockets config = ModConfig.INSTANCE.getPocketsConfig();
+        if (fill(ModDimensions.PERSONAL, config.privatePocketPoolSize)) return;
+        if (fill(ModDimensions.PUBLIC, config.publicPocketPoolSize)) return;
+        fill(ModDimensions.DUNGEON, config.dungeonPocketPoolSize);
+    }
+
+    private static boolean fill(RegistryKey<World> world, int size) {
+        PocketRegistry registry = PocketRegistry.getInstance(world);
+        if (registry.getPoolSize() >= size) return false;
+
+        long start = System.nanoTime();
+        Pocket pocket;
+        String template;
+        if (world == ModDimensions.DUNGEON) {
+            PocketTemplate pocketTemplate = SchematicHandler.INSTANCE.getRandomTemplate(DUNGEON_GROUP, DUNGEON_DEPTH, ModConfig.INSTANCE.getPocketsConfig().maxPocketSize, false);
+            if (pocketTemplate == null) return false;
+            pocket = newPocket(registry, world);
+            pocketTemplate.place(pocket, false);
+            template = pocketTemplate.getName();
+        } else {
+            PocketTemplateV2 pocketTemplate = world == ModDimensions.PERSONAL ? SchematicV2Handler.getInstance().getRandomPrivatePocket() : SchematicV2Handler.getInstance().getRandomPublicPocket();
+            pocket = newPocket(registry, world);
+            pocketTemplate.place(pocket);
+            template = pocketTemplate.getId();
+        }
+        registry.addToPool(pocket, template);
+        FILL_TIME.recordSince(start);
+        return true;
+    }
+
+    private static Pocket newPocket(PocketRegistry registry, RegistryKey<World> world) {
+        Pocket pocket = registry.newPocket();
+        pocket.setVirtualLocation(new VirtualLocation(world, 0, 0, 0)); // Replaced when the pocket is taken
+        return pocket;
+    }
+
+    /**
+     * Takes a pocket from the pool of a world and sets it up.
+     *
+     * @return The pocket, or null if the pool is empty
+     */
+    public static Pocket take(RegistryKey<World> world, VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
+        PocketRegistry registry = PocketRegistry.getInstance(world);
+        for (Int2ObjectMap.Entry<String> entry = registry.takeFromPool(); entry != null; entry = registry.takeFromPool()) {
+            Pocket pocket = registry.getPocket(entry.getIntKey());
+            if (pocket == null) continue;
+
+            if (world == ModDimensions.DUNGEON) {
+                PocketTemplate template = SchematicHandler.INSTANCE.getTemplate(DUNGEON_GROUP, entry.getValue());
+                if (template == null) {
+                    discard(registry, pocket, entry.getValue());
+                    continue;
+                }
+                pocket.setVirtualLocation(virtualLocation);
+                template.setup(pocket, linkTo, linkProperties);
+            } else {
+                PocketTemplateV2 template = SchematicV2Handler.getInstance().getTemplate(world == ModDimensions.PERSONAL ? "private" : "public", entry.getValue());
+                if (template == null) {
+                    discard(registry, pocket, entry.getValue());
+                    continue;
+                }
+                pocket.setVirtualLocation(virtualLocation);
+                template.setup(pocket, linkTo, linkProperties);
+            }
+            HITS.increment();
+            return pocket;
+        }
+        MISSES.increment();
+        return null;
+    }
+
+    /**
+     * Takes a dungeon pocket from the pool if the dungeon is at the pooled depth and group.
+     */
+    public static Pocket takeDungeon(String group, VirtualLocation virtualLocation, VirtualTarget linkTo, LinkProperties linkProperties) {
+        if (virtualLocation.getDepth() != DUNGEON_DEPTH || !group.equals(DUNGEON_GROUP)) return null;
+        return take(ModDimensions.DUNGEON, virtualLocation, linkTo, linkProperties);
+    }
+
+    private static void discard(PocketRegistry registry, Pocket pocket, String template) {
+        // The template was removed since the pocket was placed, the pocket's rifts were never registered
+        LOGGER.info("Discarding pooled pocket " + pocket.id + ", its template " + template + " no longer exists");
+        registry.removePocket(pocket.id);
+    }
+}
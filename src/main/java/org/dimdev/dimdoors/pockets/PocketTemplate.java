@@ -83,7 +83,7 @@ public class PocketTemplate {
                 int y = tileEntityNBT.getInt("y");
                 int z = tileEntityNBT.getInt("z");
 
-                BlockState state = schematic.palette.get(schematic.blockData[x][y][z]);
+                BlockState state = schematic.palette.get(schematic.blockData.get(x, y, z));
 
                 CompoundTag newNBT = new CompoundTag();
                 EntranceRiftBlockEntity rift = ModBlockEntityTypes.ENTRANCE_RIFT.instantiate();
@@ -144,12 +144,7 @@ public class PocketTemplate {
         int yBase = pocket.box.minY;
         int zBase = pocket.box.minZ;
 
-        //Converting the schematic from bytearray if needed
-        if (this.schematic == null) {
-            LOGGER.debug("Schematic is null, trying to reload from byteArray.");
-            this.schematic = SchematicHandler.INSTANCE.loadSchematicFromByteArray(this.schematicBytecode);
-            replacePlaceholders(this.schematic);
-        }
+        this.loadSchematic();
 
         //Place the schematic
         LOGGER.info("Placing new pocket using schematic " + this.id + " at x = " + xBase + ", z = " + zBase);
@@ -162,8 +157,18 @@ public class PocketTemplate {
         }
     }
 
+    private void loadSchematic() {
+        //Converting the schematic from bytearray if needed
+        if (this.schematic == null) {
+            LOGGER.debug("Schematic is null, trying to reload from byteArray.");
+            this.schematic = SchematicHandler.INSTANCE.loadSchematicFromByteArray(this.schematicBytecode);
+            replacePlaceholders(this.schematic);
+        }
+    }
+
     public void setup(Pocket pocket, VirtualTarget linkTo, LinkProperties linkProperties) {
         int gridSize = PocketRegistry.getInstance(pocket.world).getGridSize();
+        this.loadSchematic(); // The pocket may have been placed before the server restarted
         ServerWorld world = DimensionalDoorsInitializer.getWorld(pocket.world);
         int xBase = pocket.box.minX;
         int yBase = pocket.box.minY;
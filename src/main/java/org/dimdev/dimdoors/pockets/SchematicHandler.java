@@ -20,6 +20,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -32,7 +33,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.dimdev.dimdoors.DimensionalDoorsInitializer;
 import org.dimdev.dimdoors.ModConfig;
-import org.dimdev.dimdoors.util.math.MathUtil;
+import org.dimdev.dimdoors.util.math.WeightedSampler;
 import org.dimdev.dimdoors.util.schematic.Schematic;
 
 import net.minecraft.nbt.CompoundTag;
@@ -44,6 +45,7 @@ import net.minecraft.nbt.NbtIo;
 public class SchematicHandler { // TODO: parts of this should be moved to the org.dimdev.ddutils.schem package
     private static final Logger LOGGER = LogManager.getLogger();
     private static final String SAVED_POCKETS_GROUP_NAME = "saved_pockets";
+    private static final Random RANDOM = new Random();
     public static final SchematicHandler INSTANCE = new SchematicHandler();
 
     private SchematicHandler() {
@@ -68,11 +70,13 @@ public class SchematicHandler { // TODO: parts of this should be moved to the or
     private Map<String, Map<String, Integer>> nameMap; // group -> name -> index in templates
     private List<Entry<PocketTemplate, Integer>> usageList = new ArrayList<>(); //template and nr of usages
     private final Map<PocketTemplate, Integer> usageMap = new HashMap<>(); //template -> index in usageList
+    private final Map<String, WeightedSampler<PocketTemplate>> templateSamplers = new HashMap<>(); // criteria of getRandomTemplate -> sampler, cleared when templates change
 
     public void loadSchematics() {
         long startTime = System.currentTimeMillis();
 
         this.templates = new ArrayList<>();
+        this.templateSamplers.clear();
 
         String[] names = {"default_dungeon_nether", "default_dungeon_normal", "default_private", "default_public", "default_blank"}; // TODO: don't hardcode
         for (String name : names) {
@@ -299,7 +303,17 @@ public class SchematicHandler { // TODO: parts of this should be moved to the or
      * @return A random template matching those criteria, or null if none were found
      */
     public PocketTemplate getRandomTemplate(String group, int depth, int maxSize, boolean getLargest) { // TODO: multiple groups
-        // TODO: cache this for faster calls:
+        String key = group + "|" + depth + "|" + maxSize + "|" + getLargest;
+        WeightedSampler<PocketTemplate> sampler = this.templateSamplers.computeIfAbsent(key, k -> this.buildTemplateSampler(group, depth, maxSize, getLargest));
+        if (sampler.isEmpty()) {
+            LOGGER.warn("getRandomTemplate failed, no templates matching those criteria were found.");
+            return null; // TODO: switch to exception system
+        }
+
+        return sampler.sample(RANDOM);
+    }
+
+    private WeightedSampler<PocketTemplate> buildTemplateSampler(String group, int depth, int maxSize, boolean getLargest) {
         Map<PocketTemplate, Float> weightedTemplates = new HashMap<>();
         int largestSize = 0;
         for (PocketTemplate template : this.templates) {
@@ -311,12 +325,7 @@ public class SchematicHandler { // TODO: parts of this should be moved to the or
                 weightedTemplates.put(template, template.getWeight(depth));
             }
         }
-        if (weightedTemplates.isEmpty()) {
-            LOGGER.warn("getRandomTemplate failed, no templates matching those criteria were found.");
-            return null; // TODO: switch to exception system
-        }
-
-        return MathUtil.weightedRandom(weightedTemplates);
+        return WeightedSampler.of(weightedTemplates);
     }
 
     public PocketTemplate getPersonalPocketTemplate() {
@@ -358,6 +367,7 @@ public class SchematicHandler { // TODO: parts of this should be moved to the or
         if (savedDungeons.containsKey(id)) {
             this.templates.remove((int) savedDungeons.remove(id));
         }
+        this.templateSamplers.clear();
 
         //create byte array
         ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
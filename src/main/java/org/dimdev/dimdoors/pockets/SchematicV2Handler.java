@@ -94,6 +94,16 @@ public class SchematicV2Handler {
         return Lists.newArrayList(publicPockets).get(index);
     }
 
+    /**
+     * @return The template with that group and name, or null if it wasn't found
+     */
+    public PocketTemplateV2 getTemplate(String group, String name) {
+        for (PocketTemplateV2 template : this.templateMap.get(group)) {
+            if (template.getId().equals(name)) return template;
+        }
+        return null;
+    }
+
     public static SchematicV2Handler getInstance() {
         return INSTANCE;
     }
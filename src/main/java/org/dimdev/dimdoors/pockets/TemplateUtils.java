@@ -86,17 +86,34 @@ public class TemplateUtils {
             return;
         }
 
-        RiftBlockEntity selectedEntrance = MathUtil.weightedRandom(entranceWeights);
+        RiftBlockEntity selectedEntrance = MathUtil.hasPositiveWeight(entranceWeights) ? MathUtil.weightedRandom(entranceWeights, world.random) : null;
+
+        // Colors are computed once all rifts are set up
+        RiftRegistry registry = RiftRegistry.instance();
+        registry.beginBatch();
+        try {
+            setupDestinations(rifts, selectedEntrance, linkTo, linkProperties, pocket, registry);
+            registry.registerRifts(rifts);
+        } finally {
+            registry.endBatch();
+        }
+
+        for (RiftBlockEntity rift : rifts) {
+            rift.markDirty();
+        }
+    }
+
+    private static void setupDestinations(List<? extends RiftBlockEntity> rifts, RiftBlockEntity selectedEntrance, VirtualTarget linkTo, LinkProperties linkProperties, Pocket pocket, RiftRegistry registry) {
 
         // Replace entrances with appropriate destinations
         for (RiftBlockEntity rift : rifts) {
             VirtualTarget dest = rift.getDestination();
             if (dest instanceof PocketEntranceMarker) {
                 if (rift == selectedEntrance) {
-                    PocketRegistry.getInstance(world.getRegistryKey()).markDirty();
+                    PocketRegistry.getInstance(pocket.world).markDirty();
                     rift.setDestination(((PocketEntranceMarker) dest).getIfDestination());
                     rift.register();
-                    RiftRegistry.instance().addPocketEntrance(pocket, new Location((ServerWorld) rift.getWorld(), rift.getPos()));
+                    registry.addPocketEntrance(pocket, new Location((ServerWorld) rift.getWorld(), rift.getPos()));
                 } else {
                     rift.setDestination(((PocketEntranceMarker) dest).getOtherwiseDestination());
                 }
@@ -110,11 +127,6 @@ public class TemplateUtils {
                 rift.setDestination(rift.getProperties() == null || !rift.getProperties().oneWay ? linkTo : null);
             }
         }
-
-        for (RiftBlockEntity rift : rifts) {
-            rift.register();
-            rift.markDirty();
-        }
     }
 
     public static void replacePlaceholders(Schematic schematic) {
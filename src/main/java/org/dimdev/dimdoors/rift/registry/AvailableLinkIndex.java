@@ -0,0 +1,88 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.dimdev.dimdoors.util.math.SpatialIndex;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
+
+/**
+ * Indexes the rifts that a random link could currently be made to, partitioned by
+ * link group and bucketed by virtual location. A rift is only indexed while it has
+ * links remaining and a non-zero weight for its type (floating or entrance). Like the
+ * link weights, the index only uses the virtual x, z and depth, so rifts in every
+ * virtual world are candidates.
+ */
+public class AvailableLinkIndex {
+    private final Int2ObjectMap<SpatialIndex<Rift>> groups = new Int2ObjectOpenHashMap<>();
+    private final Map<Rift, int[]> entries = new HashMap<>(); // Rift -> groups it is indexed in
+
+    public static boolean isAvailable(Rift rift) {
+        if (rift instanceof RiftPlaceholder || rift.properties == null || rift.properties.groups == null) return false;
+        float weight = rift.isDetached ? rift.properties.floatingWeight : rift.properties.entranceWeight;
+        return weight != 0 && rift.properties.linksRemaining != 0 && !rift.properties.groups.isEmpty();
+    }
+
+    /**
+     * Re-evaluates whether a rift is available and moves it to the groups and location
+     * it currently has. Must be called whenever the rift's properties or type change.
+     */
+    public void update(Rift rift) {
+        this.remove(rift);
+        if (!isAvailable(rift)) return;
+
+        VirtualLocation virtualLocation = rift.getVirtualLocation();
+        int[] riftGroups = rift.properties.groups.stream().mapToInt(Integer::intValue).toArray(); // copied, the set is mutable
+        for (int group : riftGroups) {
+            this.groups.computeIfAbsent(group, key -> new SpatialIndex<>())
+                    .put(rift, virtualLocation.getX(), virtualLocation.getZ(), virtualLocation.getDepth());
+        }
+        this.entries.put(rift, riftGroups);
+    }
+
+    public void remove(Rift rift) {
+        int[] riftGroups = this.entries.remove(rift);
+        if (riftGroups == null) return;
+
+        for (int group : riftGroups) {
+            SpatialIndex<Rift> index = this.groups.get(group);
+            index.remove(rift);
+            if (index.size() == 0) this.groups.remove(group);
+        }
+    }
+
+    public boolean contains(Rift rift) {
+        return this.entries.containsKey(rift);
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public void clear() {
+        this.groups.clear();
+        this.entries.clear();
+    }
+
+    /**
+     * Visits the available rifts in any of the accepted groups whose virtual location is within
+     * {@code radius} blocks of {@code center} on the x and z axes and between minDepth and
+     * maxDepth, in any virtual world. Each rift is visited at most once.
+     *
+     * @param radius The maximum x/z distance, or a negative number for no limit
+     */
+    public void forEachNear(Set<Integer> acceptedGroups, VirtualLocation center, int radius, int minDepth, int maxDepth, SpatialIndex.Visitor<Rift> visitor) {
+        Set<Rift> visited = acceptedGroups.size() > 1 ? new HashSet<>() : null; // A rift can be in several of the groups
+        for (int group : acceptedGroups) {
+            SpatialIndex<Rift> index = this.groups.get(group);
+            if (index == null) continue;
+            index.forEachNear(center.getX(), center.getZ(), radius, minDepth, maxDepth, (rift, x, z, depth) -> {
+                if (visited == null || visited.add(rift)) visitor.visit(rift, x, z, depth);
+            });
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
+import org.dimdev.dimdoors.util.Location;
+import org.dimdev.dimdoors.util.NbtUtil;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * The notifications for the rifts of one world that were not loaded when a rift they were
+ * linked to or from was removed. They are kept, and saved, until the rift's chunk loads
+ * again, since loading it right away could load chunks in several worlds to remove a
+ * single rift.
+ */
+public class PendingRiftNotifications {
+    private final Long2ObjectMap<List<Notification>> chunks = new Long2ObjectOpenHashMap<>(); // Packed ChunkPos -> notifications for the rifts in it
+
+    public void add(Notification notification) {
+        long chunk = ChunkPos.toLong(notification.rift.getX() >> 4, notification.rift.getZ() >> 4);
+        List<Notification> notifications = this.chunks.get(chunk);
+        if (notifications == null) {
+            notifications = new ArrayList<>();
+            this.chunks.put(chunk, notifications);
+        }
+        notifications.add(notification);
+    }
+
+    public boolean contains(ChunkPos chunk) {
+        return this.chunks.containsKey(chunk.toLong());
+    }
+
+    /**
+     * @return The notifications for the rifts in a chunk, which are no longer pending
+     */
+    public List<Notification> remove(ChunkPos chunk) {
+        List<Notification> notifications = this.chunks.remove(chunk.toLong());
+        return notifications != null ? notifications : new ArrayList<>();
+    }
+
+    /**
+     * Drops the notifications for a rift that was removed itself.
+     *
+     * @return Whether there were any
+     */
+    public boolean removeRift(BlockPos rift) {
+        long chunk = ChunkPos.toLong(rift.getX() >> 4, rift.getZ() >> 4);
+        List<Notification> notifications = this.chunks.get(chunk);
+        if (notifications == null) return false;
+
+        boolean removed = false;
+        for (Iterator<Notification> iterator = notifications.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().rift.equals(rift)) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        if (notifications.isEmpty()) this.chunks.remove(chunk);
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return this.chunks.isEmpty();
+    }
+
+    public ListTag toTag() {
+        ListTag notificationsNBT = new ListTag();
+        for (List<Notification> notifications : this.chunks.values()) {
+            for (Notification notification : notifications) {
+                notificationsNBT.add(notification.toTag());
+            }
+        }
+        return notificationsNBT;
+    }
+
+    public void fromTag(ListTag tag) {
+        this.chunks.clear();
+        for (Tag notificationNBT : tag) {
+            this.add(Notification.fromTag((CompoundTag) notificationNBT));
+        }
+    }
+
+    public static class Notification {
+        public final BlockPos rift;
+        public final Location gone; // Null if the target that is gone was not a rift
+        public final boolean targetGone; // Whether the rift that is gone was the target or a source
+
+        public Notification(BlockPos rift, Location gone, boolean targetGone) {
+            this.rift = rift;
+            this.gone = gone;
+            this.targetGone = targetGone;
+        }
+
+        public void deliver(RiftBlockEntity riftTileEntity) {
+            if (this.gone == null) {
+                riftTileEntity.updateColor();
+            } else if (this.targetGone) {
+                riftTileEntity.handleTargetGone(this.gone);
+            } else {
+                riftTileEntity.handleSourceGone(this.gone);
+            }
+        }
+
+        public CompoundTag toTag() {
+            CompoundTag tag = new CompoundTag();
+            tag.putLong("rift", this.rift.asLong());
+            if (this.gone != null) tag.put("gone", NbtUtil.serialize(this.gone, Location.CODEC));
+            tag.putBoolean("targetGone", this.targetGone);
+            return tag;
+        }
+
+        public static Notification fromTag(CompoundTag tag) {
+            Location gone = tag.contains("gone") ? NbtUtil.deserialize(tag.get("gone"), Location.CODEC) : null;
+            return new Notification(BlockPos.fromLong(tag.getLong("rift")), gone, tag.getBoolean("targetGone"));
+        }
+    }
+}
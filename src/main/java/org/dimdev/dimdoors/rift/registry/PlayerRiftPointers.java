@@ -0,0 +1,71 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * The rift each player last used for one purpose, such as entering their private pocket.
+ * Rifts are referenced by their graph id rather than by a vertex in the graph, since these
+ * change every time a player enters or leaves a pocket. The reverse index is used to clear
+ * the pointers to a rift when it is removed, before its graph id can be reused.
+ */
+public class PlayerRiftPointers {
+    private final Object2IntMap<UUID> rifts = new Object2IntOpenHashMap<>(); // Player UUID -> rift graph id
+    private final Int2ObjectMap<Set<UUID>> players = new Int2ObjectOpenHashMap<>(); // Rift graph id -> players pointing to it
+
+    public PlayerRiftPointers() {
+        this.rifts.defaultReturnValue(-1);
+    }
+
+    /**
+     * @return The graph id of the rift the player points to, or -1 if there is none
+     */
+    public int get(UUID player) {
+        return this.rifts.getInt(player);
+    }
+
+    /**
+     * @param rift The graph id of the rift, or -1 to clear the player's pointer
+     */
+    public void set(UUID player, int rift) {
+        int previous = rift == -1 ? this.rifts.removeInt(player) : this.rifts.put(player, rift);
+        if (previous == rift) return;
+
+        if (previous != -1) {
+            Set<UUID> players = this.players.get(previous);
+            players.remove(player);
+            if (players.isEmpty()) this.players.remove(previous);
+        }
+        if (rift != -1) {
+            Set<UUID> players = this.players.get(rift);
+            if (players == null) {
+                players = new HashSet<>();
+                this.players.put(rift, players);
+            }
+            players.add(player);
+        }
+    }
+
+    /**
+     * Clears the pointers of all players pointing to a rift that was removed.
+     */
+    public void riftRemoved(int rift) {
+        Set<UUID> players = this.players.remove(rift);
+        if (players == null) return;
+        for (UUID player : players) this.rifts.removeInt(player);
+    }
+
+    public Iterable<Object2IntMap.Entry<UUID>> entries() {
+        return this.rifts.object2IntEntrySet();
+    }
+
+    public int size() {
+        return this.rifts.size();
+    }
+}
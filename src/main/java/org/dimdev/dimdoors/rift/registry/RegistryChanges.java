@@ -0,0 +1,113 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtHelper;
+
+/**
+ * The changes made to a {@link RiftSubregistry}, or to the player pointers of the
+ * {@link RiftRegistry}, since it was last saved. Only the last state of each vertex,
+ * link and player pointer is kept, so applying a segment written from this is
+ * idempotent and segments can be replayed on top of a newer full save.
+ */
+public class RegistryChanges {
+    private final Map<UUID, RegistryVertex> vertices = new LinkedHashMap<>(); // Added or changed, written as they are at save time
+    private final Set<UUID> removedVertices = new LinkedHashSet<>();
+    private final Map<Link, Boolean> links = new LinkedHashMap<>(); // Link -> whether it exists
+    private final Map<String, Map<UUID, UUID>> playerPointers = new HashMap<>(); // Pointer map name -> player -> rift, null if cleared
+
+    public void vertexChanged(RegistryVertex vertex) {
+        this.removedVertices.remove(vertex.id);
+        this.vertices.put(vertex.id, vertex);
+    }
+
+    public void vertexRemoved(RegistryVertex vertex) {
+        this.vertices.remove(vertex.id);
+        this.removedVertices.add(vertex.id);
+    }
+
+    public void linkChanged(RegistryVertex from, RegistryVertex to, boolean exists) {
+        this.links.put(new Link(from.id, to.id), exists);
+    }
+
+    public void playerPointerChanged(String map, UUID player, Rift rift) {
+        this.playerPointers.computeIfAbsent(map, key -> new HashMap<>()).put(player, rift != null ? rift.id : null);
+    }
+
+    public boolean isEmpty() {
+        return this.vertices.isEmpty() && this.removedVertices.isEmpty() && this.links.isEmpty() && this.playerPointers.isEmpty();
+    }
+
+    public void clear() {
+        this.vertices.clear();
+        this.removedVertices.clear();
+        this.links.clear();
+        this.playerPointers.clear();
+    }
+
+    public CompoundTag toTag() {
+        CompoundTag tag = new CompoundTag();
+
+        RiftRegistryFormat.Writer writer = new RiftRegistryFormat.Writer();
+        for (RegistryVertex vertex : this.vertices.values()) {
+            if (vertex instanceof Rift) {
+                writer.writeRift((Rift) vertex);
+            } else if (vertex instanceof PocketEntrancePointer) {
+                writer.writePocketEntrance((PocketEntrancePointer) vertex);
+            }
+        }
+        for (Map.Entry<Link, Boolean> entry : this.links.entrySet()) {
+            writer.writeLink(entry.getKey().from, entry.getKey().to, entry.getValue());
+        }
+        writer.toTag(tag);
+
+        ListTag removedNBT = new ListTag();
+        for (UUID id : this.removedVertices) removedNBT.add(NbtHelper.fromUuid(id));
+        tag.put("removed", removedNBT);
+
+        CompoundTag pointersNBT = new CompoundTag();
+        for (Map.Entry<String, Map<UUID, UUID>> map : this.playerPointers.entrySet()) {
+            ListTag entriesNBT = new ListTag();
+            for (Map.Entry<UUID, UUID> entry : map.getValue().entrySet()) {
+                CompoundTag entryNBT = new CompoundTag();
+                entryNBT.putUuid("player", entry.getKey());
+                if (entry.getValue() != null) entryNBT.putUuid("rift", entry.getValue());
+                entriesNBT.add(entryNBT);
+            }
+            pointersNBT.put(map.getKey(), entriesNBT);
+        }
+        tag.put("playerPointers", pointersNBT);
+        return tag;
+    }
+
+    private static final class Link {
+        final UUID from;
+        final UUID to;
+
+        Link(UUID from, UUID to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Link)) return false;
+            Link link = (Link) o;
+            return this.from.equals(link.from) && this.to.equals(link.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.from, this.to);
+        }
+    }
+}
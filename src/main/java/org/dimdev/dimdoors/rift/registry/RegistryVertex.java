@@ -20,6 +20,7 @@ public abstract class RegistryVertex {
     public static final Codec<RegistryVertex> CODEC = registry.dispatch(RegistryVertex::getType, RegistryVertexType::codec);
 
     public UUID id = UUID.randomUUID(); // Used to create pointers to registry vertices. Should not be used for anything other than saving.
+    public int graphId = -1; // Id in the registry graph, assigned when the vertex is added. Not saved.
 
     public void sourceGone(RegistryVertex source) {
     }
@@ -40,7 +41,6 @@ public abstract class RegistryVertex {
     }
 
     public interface RegistryVertexType<T extends RegistryVertex> {
-        RegistryVertexType<PlayerRiftPointer> PLAYER = register("player", PlayerRiftPointer.CODEC);
         RegistryVertexType<Rift> RIFT = register("rift", Rift.CODEC);
         RegistryVertexType<PocketEntrancePointer> ENTRANCE = register("entrance", PocketEntrancePointer.CODEC);
         RegistryVertexType<RiftPlaceholder> RIFT_PLACEHOLDER = register("rift_placeholder", RiftPlaceholder.CODEC);
@@ -6,8 +6,9 @@ import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
 import org.dimdev.dimdoors.util.Location;
+import org.dimdev.dimdoors.util.RGBA;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
 
 import net.minecraft.util.dynamic.DynamicSerializableUuid;
 
@@ -25,6 +26,8 @@ public class Rift extends RegistryVertex {
     public Location location;
     public boolean isDetached;
     public LinkProperties properties;
+    private VirtualLocation virtualLocation; // Computed when first needed, not saved
+    private RGBA color; // The color last computed for the rift's block entity, null if it has to be computed again, not saved
 
     public Rift(Location location) {
         this.location = location;
@@ -49,32 +52,59 @@ public class Rift extends RegistryVertex {
     @Override
     public void sourceGone(RegistryVertex source) {
         super.sourceGone(source);
-        RiftBlockEntity riftTileEntity = (RiftBlockEntity) this.location.getBlockEntity();
         if (source instanceof Rift) {
-            riftTileEntity.handleSourceGone(((Rift) source).location);
+            RiftRegistry.instance().notifyRift(this.location, ((Rift) source).location, false);
         }
     }
 
     @Override
     public void targetGone(RegistryVertex target) {
         super.targetGone(target);
-        RiftBlockEntity riftTileEntity = (RiftBlockEntity) this.location.getBlockEntity();
-        if (target instanceof Rift) {
-            riftTileEntity.handleTargetGone(((Rift) target).location);
-        }
-        riftTileEntity.updateColor();
+        RiftRegistry.instance().notifyRift(this.location, target instanceof Rift ? ((Rift) target).location : null, true);
     }
 
     public void targetChanged(RegistryVertex target) {
         LOGGER.debug("Rift " + this + " notified of target " + target + " having changed. Updating color.");
-        ((RiftBlockEntity) this.location.getBlockEntity()).updateColor();
+        RiftRegistry.instance().queueColorUpdate(this, false);
     }
 
+    /**
+     * Updates the color of this rift and of the rifts linking to it. This is done once at
+     * the end of the tick, however often the rift changes before that.
+     */
     public void markDirty() {
-        ((RiftBlockEntity) this.location.getBlockEntity()).updateColor();
-        for (Location location : RiftRegistry.instance().getSources(this.location)) {
-            RiftRegistry.instance().getRift(location).targetChanged(this);
-        }
+        RiftRegistry.instance().queueColorUpdate(this, true);
+    }
+
+    /**
+     * Gets the virtual location of this rift. It is only looked up in the pocket registry
+     * once, and again after the virtual location of its pocket changed.
+     */
+    public VirtualLocation getVirtualLocation() {
+        if (this.virtualLocation == null) this.virtualLocation = VirtualLocation.fromLocation(this.location);
+        return this.virtualLocation;
+    }
+
+    void invalidateVirtualLocation() {
+        this.virtualLocation = null;
+    }
+
+    /**
+     * Gets the color last computed for this rift. A rift's color only depends on its
+     * destination and the links around it, so it is kept until one of those changes.
+     *
+     * @return The color, or null if it has to be computed again
+     */
+    public RGBA getCachedColor() {
+        return this.color;
+    }
+
+    void setCachedColor(RGBA color) {
+        this.color = color;
+    }
+
+    void invalidateColor() {
+        this.color = null;
     }
 
     @Override
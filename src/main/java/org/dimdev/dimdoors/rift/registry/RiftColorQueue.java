@@ -0,0 +1,90 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
+import org.dimdev.dimdoors.util.Location;
+
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+import static org.dimdev.dimdoors.DimensionalDoorsInitializer.getWorld;
+
+/**
+ * Collects the rifts whose color has to be recomputed and recomputes each of them once
+ * per tick. A changed rift also recolors the rifts linking to it, since a rift's color
+ * depends on its target. Setting up a pocket changes hundreds of rifts, which would
+ * otherwise recompute their own and their sources' colors after every single change.
+ *
+ * <p>Rifts keep the color last computed for them until a link they depend on changes or
+ * they ask to be recolored, so a rift whose properties changed isn't recolored. Rifts in
+ * unloaded chunks are recolored once their chunk loads, rather than loading it.
+ */
+public class RiftColorQueue {
+    private Set<Location> changedRifts = new LinkedHashSet<>(); // Rifts whose sources have to be recolored too
+    private Set<Location> recoloredRifts = new LinkedHashSet<>();
+    private final Map<RegistryKey<World>, Long2ObjectMap<Set<Location>>> unloadedRifts = new HashMap<>(); // World -> packed ChunkPos -> rifts to recolor once it loads
+
+    public void riftChanged(Location location) {
+        this.changedRifts.add(location);
+    }
+
+    public void colorChanged(Location location) {
+        this.recoloredRifts.add(location);
+    }
+
+    public void chunkLoaded(RegistryKey<World> world, ChunkPos chunk) {
+        Long2ObjectMap<Set<Location>> chunks = this.unloadedRifts.get(world);
+        if (chunks == null) return;
+        Set<Location> rifts = chunks.remove(chunk.toLong());
+        if (chunks.isEmpty()) this.unloadedRifts.remove(world);
+        if (rifts != null) this.recoloredRifts.addAll(rifts);
+    }
+
+    public boolean isEmpty() {
+        return this.changedRifts.isEmpty() && this.recoloredRifts.isEmpty();
+    }
+
+    public void flush(RiftRegistry registry) {
+        if (this.isEmpty()) return;
+
+        Set<Location> changedRifts = this.changedRifts;
+        Set<Location> recoloredRifts = this.recoloredRifts;
+        this.changedRifts = new LinkedHashSet<>();
+        this.recoloredRifts = new LinkedHashSet<>();
+
+        for (Location location : changedRifts) {
+            if (!registry.isRiftAt(location)) continue;
+            recoloredRifts.add(location);
+            recoloredRifts.addAll(registry.getSources(location));
+        }
+
+        for (Location location : recoloredRifts) {
+            Rift rift = registry.getRiftOrNull(location);
+            if (rift != null && rift.getCachedColor() != null) continue; // Nothing it depends on changed
+
+            ServerWorld world = getWorld(location.world);
+            if (world == null) continue;
+            if (!world.getChunkManager().isChunkLoaded(location.pos.getX() >> 4, location.pos.getZ() >> 4)) {
+                this.unloadedRifts.computeIfAbsent(location.world, key -> new Long2ObjectOpenHashMap<>())
+                        .computeIfAbsent(ChunkPos.toLong(location.pos.getX() >> 4, location.pos.getZ() >> 4), key -> new LinkedHashSet<>())
+                        .add(location);
+                continue;
+            }
+
+            BlockEntity blockEntity = world.getBlockEntity(location.pos);
+            if (blockEntity instanceof RiftBlockEntity) {
+                ((RiftBlockEntity) blockEntity).updateColor();
+                if (rift != null) rift.setCachedColor(((RiftBlockEntity) blockEntity).getColor());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
+import org.dimdev.dimdoors.util.Location;
+
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+import static org.dimdev.dimdoors.DimensionalDoorsInitializer.getWorld;
+
+/**
+ * Collects the rifts placed by world generation, which runs on worker threads, and registers
+ * them on the server thread. Rifts can be queued from any thread. They are registered in the
+ * order of their locations rather than the order they were queued in, so the result doesn't
+ * depend on which thread finished first. A rift whose chunk isn't loaded yet waits until it is.
+ */
+public class RiftRegistrationQueue {
+    private static final Comparator<Location> ORDER = Comparator.comparing((Location location) -> location.world.getValue().toString())
+            .thenComparingLong(location -> location.pos.asLong());
+
+    private final Queue<Location> queued = new ConcurrentLinkedQueue<>(); // Added from any thread
+    private final Map<RegistryKey<World>, Long2ObjectMap<List<BlockPos>>> waiting = new HashMap<>(); // World -> packed ChunkPos -> rifts in that chunk
+    private final List<Location> ready = new ArrayList<>(); // Rifts that were waiting for a chunk that has loaded since
+
+    public void add(Location location) {
+        this.queued.add(location);
+    }
+
+    public void chunkLoaded(RegistryKey<World> world, ChunkPos chunk) {
+        Long2ObjectMap<List<BlockPos>> chunks = this.waiting.get(world);
+        if (chunks == null) return;
+        List<BlockPos> rifts = chunks.remove(chunk.toLong());
+        if (rifts == null) return;
+        for (BlockPos pos : rifts) this.ready.add(new Location(world, pos));
+        if (chunks.isEmpty()) this.waiting.remove(world);
+    }
+
+    /**
+     * Registers the queued rifts whose chunks are loaded. Must be called on the server thread.
+     */
+    public void commit() {
+        List<Location> locations = new ArrayList<>(this.ready);
+        this.ready.clear();
+        for (Location location = this.queued.poll(); location != null; location = this.queued.poll()) {
+            locations.add(location);
+        }
+        if (locations.isEmpty()) return;
+
+        locations.sort(ORDER);
+        for (Location location : locations) {
+            ServerWorld world = getWorld(location.world);
+            if (world == null) continue;
+
+            int chunkX = location.pos.getX() >> 4;
+            int chunkZ = location.pos.getZ() >> 4;
+            if (!world.getChunkManager().isChunkLoaded(chunkX, chunkZ)) {
+                this.addWaiting(location, ChunkPos.toLong(chunkX, chunkZ));
+                continue;
+            }
+
+            BlockEntity blockEntity = world.getBlockEntity(location.pos);
+            if (blockEntity instanceof RiftBlockEntity) ((RiftBlockEntity) blockEntity).register();
+        }
+    }
+
+    private void addWaiting(Location location, long chunk) {
+        Long2ObjectMap<List<BlockPos>> chunks = this.waiting.computeIfAbsent(location.world, key -> new Long2ObjectOpenHashMap<>());
+        List<BlockPos> rifts = chunks.get(chunk);
+        if (rifts == null) {
+            rifts = new ArrayList<>();
+            chunks.put(chunk, rifts);
+        }
+        rifts.add(location.pos);
+    }
+
+    public void clear() {
+        this.queued.clear();
+        this.waiting.clear();
+        this.ready.clear();
+    }
+}
@@ -1,230 +1,647 @@
 package org.dimdev.dimdoors.rift.registry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.dimdev.dimdoors.util.GraphUtils;
+import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
+import org.dimdev.dimdoors.util.CompactGraph;
+import org.dimdev.dimdoors.util.JournaledPersistentState;
 import org.dimdev.dimdoors.util.Location;
-import org.dimdev.dimdoors.util.NbtUtil;
+import org.dimdev.dimdoors.util.Metrics;
+import org.dimdev.dimdoors.util.math.SpatialIndex;
+import org.dimdev.dimdoors.world.ModDimensions;
 import org.dimdev.dimdoors.world.pocket.Pocket;
 import org.dimdev.dimdoors.world.pocket.PocketRegistry;
 import org.dimdev.dimdoors.world.pocket.PrivatePocketData;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
 
+import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtHelper;
 import net.minecraft.nbt.Tag;
-import net.minecraft.world.PersistentState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
 
 import static net.minecraft.world.World.OVERWORLD;
+import static org.dimdev.dimdoors.DimensionalDoorsInitializer.getServer;
 import static org.dimdev.dimdoors.DimensionalDoorsInitializer.getWorld;
 
-public class RiftRegistry extends PersistentState {
+/**
+ * The rift registry of all worlds. Lookups go through one graph that spans every world, while
+ * the rifts of each world are saved by that world's {@link RiftSubregistry}. The registry itself
+ * only saves the players' rift pointers.
+ */
+public class RiftRegistry extends JournaledPersistentState {
     private static final Logger LOGGER = LogManager.getLogger();
     private static final String DATA_NAME = "rifts";
+    private static final Metrics.Timer LOAD_TIME = Metrics.timer("rift_registry.load");
+    private static final Metrics.Timer TO_TAG_TIME = Metrics.timer("rift_registry.to_tag");
+    private static final Metrics.Timer WRITE_SUBREGISTRY_TIME = Metrics.timer("rift_registry.write_subregistry");
+    private static final Metrics.Timer ADD_RIFT_TIME = Metrics.timer("rift_registry.add_rift");
+    private static final Metrics.Timer REMOVE_RIFT_TIME = Metrics.timer("rift_registry.remove_rift");
+    private static final Metrics.Timer ADD_LINK_TIME = Metrics.timer("rift_registry.add_link");
 
-    protected DefaultDirectedGraph<RegistryVertex, DefaultEdge> graph = new DefaultDirectedGraph<>(DefaultEdge.class);
-    protected Map<Location, Rift> locationMap = new HashMap<>();
-    protected Map<Pocket, PocketEntrancePointer> pocketEntranceMap = new HashMap<>();
-    protected Map<UUID, RegistryVertex> uuidMap = new HashMap<>();
+    protected CompactGraph<RegistryVertex> graph = new CompactGraph<>();
+    protected Map<RegistryKey<World>, Long2IntMap> locationMap = new HashMap<>(); // World -> packed BlockPos -> rift vertex id
+    protected Map<RegistryKey<World>, Int2IntMap> pocketEntranceMap = new HashMap<>(); // Pocket world -> pocket id -> entrance pointer vertex id
+    protected Map<RegistryKey<World>, Int2ObjectMap<IntSet>> pocketRiftMap = new HashMap<>(); // Pocket world -> pocket id -> vertex ids of the rifts in the pocket
+    protected Int2IntMap riftPocketMap = newRiftPocketMap(); // Rift vertex id -> id of the pocket it was indexed under in pocketRiftMap
+    protected Map<RegistryKey<World>, RiftSubregistry> subregistries = new HashMap<>();
+    protected AvailableLinkIndex availableLinks = new AvailableLinkIndex(); // Link group -> linkable rifts by virtual location
+    protected RiftColorQueue colorQueue = new RiftColorQueue();
+    protected int batchDepth; // Number of nested batches in progress, colors are only updated once the last one ends
+    protected Map<RegistryKey<World>, LongSet> loadedChunks = new HashMap<>(); // Chunks loaded this tick that have pending notifications
+    protected Set<RegistryKey<World>> snapshotChangedWorlds = new HashSet<>(); // Worlds to snapshot again entirely, for example after loading
+    protected Map<RegistryKey<World>, LongSet> snapshotChangedRifts = new HashMap<>(); // Packed BlockPos of the rifts that changed since the last snapshot
+    protected Map<RegistryKey<World>, IntSet> snapshotChangedPockets = new HashMap<>(); // Ids of the pockets whose entrances changed since the last snapshot
+    private static final RiftRegistrationQueue REGISTRATIONS = new RiftRegistrationQueue(); // Rifts placed by world generation threads
+    private static volatile RiftRegistrySnapshot snapshot = RiftRegistrySnapshot.EMPTY; // The last published snapshot, read from any thread
+    private static RiftRegistry cached; // Looked up once per server, cleared when it stops
 
-    protected Map<UUID, PlayerRiftPointer> lastPrivatePocketEntrances = new HashMap<>(); // Player UUID -> last rift used to exit pocket
-    protected Map<UUID, PlayerRiftPointer> lastPrivatePocketExits = new HashMap<>(); // Player UUID -> last rift used to enter pocket
-    protected Map<UUID, PlayerRiftPointer> overworldRifts = new HashMap<>(); // Player UUID -> rift used to exit the overworld
+    protected PlayerRiftPointers lastPrivatePocketEntrances = new PlayerRiftPointers(); // Player UUID -> last rift used to exit pocket
+    protected PlayerRiftPointers lastPrivatePocketExits = new PlayerRiftPointers(); // Player UUID -> last rift used to enter pocket
+    protected PlayerRiftPointers overworldRifts = new PlayerRiftPointers(); // Player UUID -> rift used to exit the overworld
+
+    protected RegistryChanges changes = new RegistryChanges(); // Player pointer changes since the last save, appended to the journal
+    private CompoundTag unloadedTag;
+    private boolean loaded;
     private final World overworld;
 
+    static {
+        Metrics.gauge("rift_registry.rifts", () -> instance().locationMap.values().stream().mapToLong(Long2IntMap::size).sum());
+        Metrics.gauge("rift_registry.vertices", () -> instance().graph.vertexCount());
+        Metrics.gauge("rift_registry.links", () -> instance().graph.edgeCount());
+        Metrics.gauge("rift_registry.available_rifts", () -> instance().availableLinks.size());
+        Metrics.gauge("rift_registry.player_pointers", () -> instance().lastPrivatePocketEntrances.size() + instance().lastPrivatePocketExits.size() + instance().overworldRifts.size());
+        Metrics.gauge("rift_registry.snapshot_version", () -> snapshot.getVersion());
+    }
+
     public RiftRegistry(World overworld) {
         super(DATA_NAME);
         this.overworld = overworld;
     }
 
     public static RiftRegistry instance() {
-        return getWorld(OVERWORLD).getPersistentStateManager().getOrCreate(() -> new RiftRegistry(getWorld(OVERWORLD)), DATA_NAME);
+        RiftRegistry registry = cached;
+        if (registry == null) {
+            registry = getWorld(OVERWORLD).getPersistentStateManager().getOrCreate(() -> new RiftRegistry(getWorld(OVERWORLD)), DATA_NAME);
+            if (!registry.loaded) registry.load();
+            cached = registry;
+        }
+        return registry;
+    }
+
+    /**
+     * Uses a registry that isn't read from the overworld's data, for example in benchmarks.
+     */
+    static void setInstance(RiftRegistry registry) {
+        cached = registry;
+    }
+
+    /**
+     * Forgets the cached registry, the registrations still queued and the last snapshot, so that
+     * the next server starts without them. Called once the server stopped rather than when a
+     * registry is created, since world generation can queue registrations before that.
+     */
+    public static void clearInstance() {
+        cached = null;
+        REGISTRATIONS.clear();
+        snapshot = RiftRegistrySnapshot.EMPTY;
     }
 
     @Override
     public void fromTag(CompoundTag nbt) {
-        // Read rifts in this dimension
+        // The subregistries have to be read first, the player pointers point to their rifts
+        this.unloadedTag = nbt;
+        this.readGeneration(nbt);
+    }
 
-        ListTag riftsNBT = (ListTag) nbt.get("rifts");
-        for (Tag riftNBT : riftsNBT) {
-            Rift rift = NbtUtil.deserialize(riftNBT, Rift.CODEC);
-            this.graph.addVertex(rift);
-            this.uuidMap.put(rift.id, rift);
-            this.locationMap.put(rift.location, rift);
+    private void load() {
+        long start = System.nanoTime();
+        // Vertex UUIDs are only needed to resolve the saved links, vertices are referenced by graph id otherwise
+        Map<UUID, RegistryVertex> uuidMap = new HashMap<>();
+        List<RiftSubregistry> subregistries = new ArrayList<>();
+        for (ServerWorld world : getServer().getWorlds()) {
+            subregistries.add(this.getSubregistry(world.getRegistryKey()));
         }
 
-        ListTag pocketsNBT = (ListTag) nbt.get("pockets");
-        for (Tag pocketNBT : pocketsNBT) {
-            PocketEntrancePointer pocket = NbtUtil.deserialize(pocketNBT, PocketEntrancePointer.CODEC);
-            this.graph.addVertex(pocket);
-            this.uuidMap.put(pocket.id, pocket);
-            this.pocketEntranceMap.put(PocketRegistry.getInstance(pocket.world).getPocket(pocket.pocketId), pocket);
+        // Before subregistries, all rifts were saved here. They are moved to their subregistries on the next save.
+        CompoundTag legacyTag = this.unloadedTag != null && this.unloadedTag.contains("rifts") ? this.unloadedTag : null;
+        if (legacyTag != null) {
+            LOGGER.info("Moving rifts to per-world subregistries");
+            RiftRegistryFormat.Reader reader = new RiftRegistryFormat.Reader(legacyTag);
+            this.loadVertices(reader, uuidMap);
+            this.loadLinks(reader, uuidMap, true);
         }
+        this.loadSubregistries(subregistries, uuidMap);
 
-        // Read the connections between links that have a source or destination in this dimension
-        ListTag linksNBT = (ListTag) nbt.get("links");
-        for (Tag linkNBT : linksNBT) {
-            RegistryVertex from = this.uuidMap.get(((CompoundTag) linkNBT).getUuid("from"));
-            RegistryVertex to = this.uuidMap.get(((CompoundTag) linkNBT).getUuid("to"));
-            if (from != null && to != null) {
-                this.graph.addEdge(from, to);
-                // We need a system for detecting links that are incomplete after processing them in the other subregistry too
+        if (this.unloadedTag != null) {
+            this.readPlayerRiftPointers((ListTag) this.unloadedTag.get("lastPrivatePocketEntrances"), uuidMap, this.lastPrivatePocketEntrances);
+            this.readPlayerRiftPointers((ListTag) this.unloadedTag.get("lastPrivatePocketExits"), uuidMap, this.lastPrivatePocketExits);
+            this.readPlayerRiftPointers((ListTag) this.unloadedTag.get("overworldRifts"), uuidMap, this.overworldRifts);
+            this.unloadedTag = null;
+
+            // Replay the changes that were saved after the last full save
+            for (CompoundTag segment : this.readJournal(OVERWORLD)) {
+                this.applyChanges(segment, uuidMap);
             }
         }
 
-        this.lastPrivatePocketEntrances = this.readPlayerRiftPointers((ListTag) nbt.get("lastPrivatePocketEntrances"));
-        this.lastPrivatePocketExits = this.readPlayerRiftPointers((ListTag) nbt.get("lastPrivatePocketExits"));
-        this.overworldRifts = this.readPlayerRiftPointers((ListTag) nbt.get("overworldRifts"));
+        if (legacyTag != null) {
+            this.requireFullSave();
+            for (RiftSubregistry subregistry : subregistries) {
+                if (subregistry.size() > 0) subregistry.requireFullSave();
+            }
+        }
+        this.snapshotChangedWorlds.addAll(this.subregistries.keySet());
+        this.loaded = true;
+        LOAD_TIME.recordSince(start);
     }
 
-    @Override
-    public CompoundTag toTag(CompoundTag tag) {
-        if (this == null) {
+    private void loadSubregistries(List<RiftSubregistry> subregistries, Map<UUID, RegistryVertex> uuidMap) {
+        List<RiftSubregistry> loading = new ArrayList<>();
+        List<RiftRegistryFormat.Reader> readers = new ArrayList<>();
+        for (RiftSubregistry subregistry : subregistries) {
+            if (subregistry.unloadedTag == null) continue;
+            RiftRegistryFormat.Reader reader = new RiftRegistryFormat.Reader(subregistry.unloadedTag);
+            this.loadVertices(reader, uuidMap);
+            loading.add(subregistry);
+            readers.add(reader);
+            subregistry.notifications.fromTag(subregistry.unloadedTag.getList("notifications", 10));
+            subregistry.unloadedTag = null;
+        }
+
+        // Links can go to another world, so they are only read once all subregistries' vertices are
+        for (RiftRegistryFormat.Reader reader : readers) {
+            this.loadLinks(reader, uuidMap, true);
+        }
+
+        // Replay the changes that were saved after the last full saves
+        for (RiftSubregistry subregistry : loading) {
+            List<CompoundTag> segments = subregistry.readJournal();
+            for (CompoundTag segment : segments) {
+                this.applyChanges(segment, uuidMap);
+                if (segment.contains("notifications")) subregistry.notifications.fromTag(segment.getList("notifications", 10));
+            }
+            if (!segments.isEmpty()) LOGGER.info("Replayed " + segments.size() + " journal segments of the rift subregistry of " + subregistry.getWorld().getValue());
         }
-        // Write rifts in this dimension
-        ListTag riftsNBT = new ListTag();
-        ListTag pocketsNBT = new ListTag();
-        for (RegistryVertex vertex : this.graph.vertexSet()) {
-            CompoundTag vertexNBT = (CompoundTag) NbtUtil.serialize(vertex, RegistryVertex.CODEC);
+    }
+
+    /**
+     * Gets the subregistry that saves the rifts of a world, reading it if it wasn't yet.
+     *
+     * @return The subregistry, or null if the world doesn't exist
+     */
+    public RiftSubregistry getSubregistry(RegistryKey<World> world) {
+        RiftSubregistry subregistry = this.subregistries.get(world);
+        if (subregistry == null) {
+            ServerWorld serverWorld = getWorld(world);
+            if (serverWorld == null) return null;
+            subregistry = serverWorld.getPersistentStateManager().getOrCreate(() -> new RiftSubregistry(world), RiftSubregistry.DATA_NAME);
+            subregistry.registry = this;
+            this.subregistries.put(world, subregistry);
+
+            if (this.loaded && subregistry.unloadedTag != null) {
+                Map<UUID, RegistryVertex> uuidMap = new HashMap<>();
+                this.graph.forEachVertex(id -> uuidMap.put(this.graph.getVertex(id).id, this.graph.getVertex(id)));
+                this.loadSubregistries(Collections.singletonList(subregistry), uuidMap);
+                this.snapshotChangedWorlds.add(world);
+            }
+        }
+        return subregistry;
+    }
+
+    private void loadVertices(RiftRegistryFormat.Reader reader, Map<UUID, RegistryVertex> uuidMap) {
+        for (Rift rift : reader.readRifts()) {
+            this.loadRift(rift, uuidMap);
+        }
+
+        for (PocketEntrancePointer pocket : reader.readPocketEntrances()) {
+            this.loadPocketEntrance(pocket, uuidMap);
+        }
+    }
+
+    private void loadRift(Rift rift, Map<UUID, RegistryVertex> uuidMap) {
+        rift.world = rift.location.world;
+        this.addVertex(rift);
+        uuidMap.put(rift.id, rift);
+        this.putLocation(rift.location, rift.graphId);
+        this.availableLinks.update(rift);
+    }
+
+    private void loadPocketEntrance(PocketEntrancePointer pocket, Map<UUID, RegistryVertex> uuidMap) {
+        pocket.world = pocket.pocketDim;
+        this.addVertex(pocket);
+        uuidMap.put(pocket.id, pocket);
+        this.pocketEntrances(pocket.pocketDim).put(pocket.pocketId, pocket.graphId);
+    }
+
+    private void loadLinks(RiftRegistryFormat.Reader reader, Map<UUID, RegistryVertex> uuidMap, boolean exist) {
+        reader.readLinks(exist, (fromId, toId) -> {
+            RegistryVertex from = uuidMap.get(fromId);
+            RegistryVertex to = uuidMap.get(toId);
+            if (from != null && to != null) {
+                if (exist) {
+                    this.graph.addEdge(from.graphId, to.graphId);
+                } else {
+                    this.graph.removeEdge(from.graphId, to.graphId);
+                }
+            }
+        });
+    }
+
+    private void applyChanges(CompoundTag segment, Map<UUID, RegistryVertex> uuidMap) {
+        RiftRegistryFormat.Reader reader = new RiftRegistryFormat.Reader(segment);
+        for (Rift rift : reader.readRifts()) {
+            RegistryVertex existing = uuidMap.get(rift.id);
+            if (existing instanceof Rift && existing.getClass() != rift.getClass()) {
+                // A placeholder became a rift (or the other way around) since it was saved
+                rift.world = rift.location.world;
+                rift.graphId = existing.graphId;
+                this.graph.replaceVertex(rift.graphId, rift);
+                uuidMap.put(rift.id, rift);
+                this.availableLinks.remove((Rift) existing);
+                this.availableLinks.update(rift);
+                this.snapshotChanged(rift); // The snapshot has whether it is a placeholder
+            } else if (existing instanceof Rift) {
+                ((Rift) existing).isDetached = rift.isDetached;
+                ((Rift) existing).properties = rift.properties;
+                this.availableLinks.update((Rift) existing);
+            } else {
+                this.loadRift(rift, uuidMap);
+            }
+        }
+
+        for (PocketEntrancePointer pocket : reader.readPocketEntrances()) {
+            if (!uuidMap.containsKey(pocket.id)) this.loadPocketEntrance(pocket, uuidMap);
+        }
+
+        for (Tag idNBT : segment.getList("removed", 11)) {
+            RegistryVertex vertex = uuidMap.remove(NbtHelper.toUuid(idNBT));
+            if (vertex == null) continue;
+            this.removeVertex(vertex);
             if (vertex instanceof Rift) {
-                riftsNBT.add(vertexNBT);
+                Rift rift = (Rift) vertex;
+                this.removeLocation(rift.location);
+                this.availableLinks.remove(rift);
             } else if (vertex instanceof PocketEntrancePointer) {
-                pocketsNBT.add(vertexNBT);
-            } else if (!(vertex instanceof PlayerRiftPointer)) {
-                throw new RuntimeException("Unsupported registry vertex type " + vertex.getClass().getName());
+                PocketEntrancePointer pocket = (PocketEntrancePointer) vertex;
+                this.pocketEntranceMap.get(pocket.pocketDim).remove(pocket.pocketId);
             }
         }
-        tag.put("rifts", riftsNBT);
-        tag.put("pockets", pocketsNBT);
 
-        // Write the connections between links that have a source or destination in this dimension
-        ListTag linksNBT = new ListTag();
-        for (DefaultEdge edge : this.graph.edgeSet()) {
-            RegistryVertex from = this.graph.getEdgeSource(edge);
-            RegistryVertex to = this.graph.getEdgeTarget(edge);
-            CompoundTag linkNBT = new CompoundTag();
-            linkNBT.putUuid("from", from.id);
-            linkNBT.putUuid("to", to.id);
-            linksNBT.add(linkNBT);
+        this.loadLinks(reader, uuidMap, true);
+        this.loadLinks(reader, uuidMap, false);
+
+        CompoundTag pointersNBT = segment.getCompound("playerPointers");
+        for (String name : pointersNBT.getKeys()) {
+            PlayerRiftPointers pointers = this.getPlayerRiftPointers(name);
+            for (Tag entryNBT : pointersNBT.getList(name, 10)) {
+                UUID player = ((CompoundTag) entryNBT).getUuid("player");
+                RegistryVertex target = ((CompoundTag) entryNBT).containsUuid("rift") ? uuidMap.get(((CompoundTag) entryNBT).getUuid("rift")) : null;
+                pointers.set(player, target instanceof Rift ? target.graphId : -1);
+            }
         }
-        tag.put("links", linksNBT);
+    }
 
-        // Subregistries are written automatically when the worlds are saved.
+    @Override
+    public CompoundTag toTag(CompoundTag tag) {
+        long start = System.nanoTime();
+        // Rifts are written by the subregistries when their worlds are saved
         tag.put("lastPrivatePocketEntrances", this.writePlayerRiftPointers(this.lastPrivatePocketEntrances));
         tag.put("lastPrivatePocketExits", this.writePlayerRiftPointers(this.lastPrivatePocketExits));
         tag.put("overworldRifts", this.writePlayerRiftPointers(this.overworldRifts));
+        this.writeGeneration(tag);
+        TO_TAG_TIME.recordSince(start);
+        return tag;
+    }
+
+    CompoundTag writeSubregistry(RiftSubregistry subregistry, CompoundTag tag) {
+        long start = System.nanoTime();
+        RiftRegistryFormat.Writer writer = new RiftRegistryFormat.Writer();
+        for (IntIterator iterator = subregistry.vertices.iterator(); iterator.hasNext(); ) {
+            int id = iterator.nextInt();
+            RegistryVertex vertex = this.graph.getVertex(id);
+            if (vertex instanceof Rift) {
+                writer.writeRift((Rift) vertex);
+            } else if (vertex instanceof PocketEntrancePointer) {
+                writer.writePocketEntrance((PocketEntrancePointer) vertex);
+            } else {
+                throw new RuntimeException("Unsupported registry vertex type " + vertex.getClass().getName());
+            }
+
+            // Write the links that have a source or destination in this world, each only once
+            this.graph.forEachTarget(id, target -> writer.writeLink(vertex.id, this.graph.getVertex(target).id, true));
+            this.graph.forEachSource(id, source -> {
+                if (subregistry.vertices.contains(source)) return;
+                writer.writeLink(this.graph.getVertex(source).id, vertex.id, true);
+            });
+        }
+        writer.toTag(tag);
+        tag.put("notifications", subregistry.notifications.toTag());
+        WRITE_SUBREGISTRY_TIME.recordSince(start);
         return tag;
     }
 
-    private Map<UUID, PlayerRiftPointer> readPlayerRiftPointers(ListTag tag) {
-        Map<UUID, PlayerRiftPointer> pointerMap = new HashMap<>();
+    @Override
+    protected boolean hasChanges() {
+        return !this.changes.isEmpty();
+    }
+
+    @Override
+    protected CompoundTag writeChanges() {
+        return this.changes.toTag();
+    }
+
+    @Override
+    protected void clearChanges() {
+        this.changes.clear();
+    }
+
+    private void readPlayerRiftPointers(ListTag tag, Map<UUID, RegistryVertex> uuidMap, PlayerRiftPointers pointers) {
         for (Tag entryNBT : tag) {
             UUID player = ((CompoundTag) entryNBT).getUuid("player");
             UUID rift = ((CompoundTag) entryNBT).getUuid("rift");
-            PlayerRiftPointer pointer = new PlayerRiftPointer(player);
-            pointerMap.put(player, pointer);
-            this.uuidMap.put(pointer.id, pointer);
-            this.graph.addVertex(pointer);
-            this.graph.addEdge(pointer, this.uuidMap.get(rift));
+            RegistryVertex target = uuidMap.get(rift);
+            if (target instanceof Rift) pointers.set(player, target.graphId);
         }
-        return pointerMap;
     }
 
-    private ListTag writePlayerRiftPointers(Map<UUID, PlayerRiftPointer> playerRiftPointerMap) {
+    private ListTag writePlayerRiftPointers(PlayerRiftPointers playerRiftPointers) {
         ListTag pointers = new ListTag();
-        for (Map.Entry<UUID, PlayerRiftPointer> entry : playerRiftPointerMap.entrySet()) {
+        for (Object2IntMap.Entry<UUID> entry : playerRiftPointers.entries()) {
             CompoundTag entryNBT = new CompoundTag();
             entryNBT.putUuid("player", entry.getKey());
-            int count = 0;
-            for (DefaultEdge edge : this.graph.outgoingEdgesOf(entry.getValue())) {
-                entryNBT.putUuid("rift", this.graph.getEdgeTarget(edge).id);
-                count++;
-            }
-            if (count != 1) throw new RuntimeException("PlayerRiftPointer points to more than one rift");
+            entryNBT.putUuid("rift", this.graph.getVertex(entry.getIntValue()).id);
             pointers.add(entryNBT);
         }
         return pointers;
     }
 
+    private PlayerRiftPointers getPlayerRiftPointers(String name) {
+        switch (name) {
+            case "lastPrivatePocketEntrances":
+                return this.lastPrivatePocketEntrances;
+            case "lastPrivatePocketExits":
+                return this.lastPrivatePocketExits;
+            case "overworldRifts":
+                return this.overworldRifts;
+            default:
+                throw new IllegalArgumentException("Unknown player rift pointer map " + name);
+        }
+    }
+
+    private void vertexChanged(RegistryVertex vertex) {
+        this.snapshotChanged(vertex);
+        RiftSubregistry subregistry = this.getSubregistry(vertex.world);
+        if (subregistry == null) return;
+        subregistry.changes.vertexChanged(vertex);
+        subregistry.markDirty();
+    }
+
+    private void vertexRemoved(RegistryVertex vertex) {
+        this.snapshotChanged(vertex);
+        RiftSubregistry subregistry = this.getSubregistry(vertex.world);
+        if (subregistry == null) return;
+        subregistry.changes.vertexRemoved(vertex);
+        subregistry.markDirty();
+    }
+
+    private void linkChanged(RegistryVertex from, RegistryVertex to, boolean exists) {
+        this.snapshotChanged(from);
+        this.snapshotChanged(to);
+
+        // Links between two worlds are saved in both subregistries
+        RiftSubregistry fromSubregistry = this.getSubregistry(from.world);
+        RiftSubregistry toSubregistry = this.getSubregistry(to.world);
+        if (fromSubregistry != null) {
+            fromSubregistry.changes.linkChanged(from, to, exists);
+            fromSubregistry.markDirty();
+        }
+        if (toSubregistry != null && toSubregistry != fromSubregistry) {
+            toSubregistry.changes.linkChanged(from, to, exists);
+            toSubregistry.markDirty();
+        }
+    }
+
+    private void addVertex(RegistryVertex vertex) {
+        vertex.graphId = this.graph.addVertex(vertex);
+        if (vertex.world != null) {
+            RiftSubregistry subregistry = this.getSubregistry(vertex.world);
+            if (subregistry != null) subregistry.vertices.add(vertex.graphId);
+        }
+    }
+
+    private void removeVertex(RegistryVertex vertex) {
+        RiftSubregistry subregistry = vertex.world != null ? this.subregistries.get(vertex.world) : null;
+        if (subregistry != null) subregistry.vertices.remove(vertex.graphId);
+        if (vertex instanceof Rift) {
+            // The graph id can be reused once the vertex is removed
+            this.lastPrivatePocketEntrances.riftRemoved(vertex.graphId);
+            this.lastPrivatePocketExits.riftRemoved(vertex.graphId);
+            this.overworldRifts.riftRemoved(vertex.graphId);
+        }
+        this.graph.removeVertex(vertex.graphId);
+        vertex.graphId = -1;
+    }
+
+    private Long2IntMap locations(RegistryKey<World> world) {
+        return this.locationMap.computeIfAbsent(world, key -> {
+            Long2IntMap map = new Long2IntOpenHashMap();
+            map.defaultReturnValue(-1);
+            return map;
+        });
+    }
+
+    private Int2IntMap pocketEntrances(RegistryKey<World> world) {
+        return this.pocketEntranceMap.computeIfAbsent(world, key -> {
+            Int2IntMap map = new Int2IntOpenHashMap();
+            map.defaultReturnValue(-1);
+            return map;
+        });
+    }
+
+    private static Int2IntMap newRiftPocketMap() {
+        Int2IntMap map = new Int2IntOpenHashMap();
+        map.defaultReturnValue(-1);
+        return map;
+    }
+
+    private void putLocation(Location location, int id) {
+        this.locations(location.world).put(location.pos.asLong(), id);
+        int pocketId = this.getPocketId(location);
+        if (pocketId != -1) {
+            this.pocketRiftMap.computeIfAbsent(location.world, key -> new Int2ObjectOpenHashMap<>())
+                    .computeIfAbsent(pocketId, key -> new IntOpenHashSet())
+                    .add(id);
+            this.riftPocketMap.put(id, pocketId);
+        }
+    }
+
+    /**
+     * @return The id of the pocket whose box contains a location, the same pocket its virtual
+     * location is taken from, or -1 if it isn't in a pocket
+     */
+    protected int getPocketId(Location location) {
+        if (!ModDimensions.isDimDoorsPocketDimension(location.world)) return -1;
+        Pocket pocket = PocketRegistry.getInstance(location.world).findPocketContaining(location.pos);
+        return pocket != null ? pocket.id : -1;
+    }
+
+    /**
+     * Unregisters a location. The rift is removed from the pocket it was indexed under rather
+     * than the one containing it now, since that pocket may have been removed or resized since.
+     */
+    private void removeLocation(Location location) {
+        int id = this.locationMap.get(location.world).remove(location.pos.asLong());
+        int pocketId = this.riftPocketMap.remove(id);
+        if (pocketId == -1) return;
+        Int2ObjectMap<IntSet> pocketRifts = this.pocketRiftMap.get(location.world);
+        IntSet rifts = pocketRifts.get(pocketId);
+        if (rifts != null && rifts.remove(id) && rifts.isEmpty()) pocketRifts.remove(pocketId);
+    }
+
+    Rift getRiftOrNull(Location location) {
+        Long2IntMap ids = this.locationMap.get(location.world);
+        if (ids == null) return null;
+        int id = ids.get(location.pos.asLong());
+        return id == -1 ? null : (Rift) this.graph.getVertex(id);
+    }
+
+    private Rift followPointer(PlayerRiftPointers pointers, UUID player) {
+        int id = pointers.get(player);
+        return id == -1 ? null : (Rift) this.graph.getVertex(id);
+    }
+
     public boolean isRiftAt(Location location) {
-        Rift possibleRift = this.locationMap.get(location);
+        Rift possibleRift = this.getRiftOrNull(location);
         return possibleRift != null && !(possibleRift instanceof RiftPlaceholder);
     }
 
+    /**
+     * @return Whether there is a rift or a rift placeholder at a location
+     */
+    public boolean isRegistered(Location location) {
+        return this.getRiftOrNull(location) != null;
+    }
+
     public Rift getRift(Location location) {
-        Rift rift = this.locationMap.get(location);
+        Rift rift = this.getRiftOrNull(location);
         if (rift == null) throw new IllegalArgumentException("There is no rift registered at " + location);
         return rift;
     }
 
     private Rift getRiftOrPlaceholder(Location location) {
-        Rift rift = this.locationMap.get(location);
+        Rift rift = this.getRiftOrNull(location);
         if (rift == null) {
             LOGGER.debug("Creating a rift placeholder at " + location);
             rift = new RiftPlaceholder();
             rift.world = location.world;
             rift.location = location;
-            this.locationMap.put(location, rift);
-            this.uuidMap.put(rift.id, rift);
-            this.graph.addVertex(rift);
+            this.addVertex(rift);
+            this.putLocation(location, rift.graphId);
+            this.vertexChanged(rift);
         }
         return rift;
     }
 
     public void addRift(Location location) {
+        long start = System.nanoTime();
         LOGGER.debug("Adding rift at " + location);
-        RegistryVertex currentRift = this.locationMap.get(location);
+        Rift currentRift = this.getRiftOrNull(location);
         Rift rift;
         if (currentRift instanceof RiftPlaceholder) {
             LOGGER.info("Converting a rift placeholder at " + location + " into a rift");
             rift = new Rift(location);
             rift.world = location.world;
             rift.id = currentRift.id;
-            GraphUtils.replaceVertex(this.graph, currentRift, rift);
+            rift.graphId = currentRift.graphId;
+            this.graph.replaceVertex(rift.graphId, rift);
+            this.invalidateSourceColors(rift); // Their target is a rift now
         } else if (currentRift == null) {
             rift = new Rift(location);
             rift.world = location.world;
-            this.graph.addVertex(rift);
+            this.addVertex(rift);
+            this.putLocation(location, rift.graphId);
         } else {
             throw new IllegalArgumentException("There is already a rift registered at " + location);
         }
-        this.uuidMap.put(rift.id, rift);
-        this.locationMap.put(location, rift);
+        this.availableLinks.update(rift);
+        this.vertexChanged(rift);
         rift.markDirty();
+        ADD_RIFT_TIME.recordSince(start);
     }
 
     public void removeRift(Location location) {
+        long start = System.nanoTime();
         LOGGER.debug("Removing rift at " + location);
 
         Rift rift = this.getRift(location);
+        int id = rift.graphId;
+
+        int[] sources = this.graph.sources(id);
+        int[] targets = this.graph.targets(id);
+        RegistryVertex[] sourceVertices = this.vertices(sources, id);
+        RegistryVertex[] targetVertices = this.vertices(targets, id);
 
-        Set<DefaultEdge> incomingEdges = this.graph.incomingEdgesOf(rift);
-        Set<DefaultEdge> outgoingEdges = this.graph.outgoingEdgesOf(rift);
+        this.removeVertex(rift);
+        this.removeLocation(location);
+        this.availableLinks.remove(rift);
+        this.vertexRemoved(rift);
+        RiftSubregistry subregistry = this.getSubregistry(location.world);
+        if (subregistry != null && subregistry.notifications.removeRift(location.pos)) subregistry.notificationsChanged();
 
-        this.graph.removeVertex(rift);
-        this.locationMap.remove(location);
-        this.uuidMap.remove(rift.id);
+        // The links of the removed rift are gone from the adjacent vertices too
+        for (RegistryVertex source : sourceVertices) this.snapshotChanged(source);
+        for (RegistryVertex target : targetVertices) this.snapshotChanged(target);
 
         // Notify the adjacent vertices of the change
-        for (DefaultEdge edge : incomingEdges) this.graph.getEdgeSource(edge).targetGone(rift);
-        for (DefaultEdge edge : outgoingEdges) this.graph.getEdgeTarget(edge).sourceGone(rift);
+        for (RegistryVertex source : sourceVertices) source.targetGone(rift);
+        for (RegistryVertex target : targetVertices) target.sourceGone(rift);
+        REMOVE_RIFT_TIME.recordSince(start);
+    }
+
+    private RegistryVertex[] vertices(int[] ids, int except) {
+        List<RegistryVertex> vertices = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            if (id != except) vertices.add(this.graph.getVertex(id));
+        }
+        return vertices.toArray(new RegistryVertex[0]);
     }
 
     private void addEdge(RegistryVertex from, RegistryVertex to) {
-        this.graph.addEdge(from, to);
-        if (from instanceof PlayerRiftPointer) {
-            this.markDirty();
-        } else if (from instanceof Rift) {
+        this.graph.addEdge(from.graphId, to.graphId);
+        this.linkChanged(from, to, true);
+        this.invalidateColors(from, to);
+        if (from instanceof Rift) {
             ((Rift) from).markDirty();
         }
         if (to instanceof Rift) {
@@ -233,14 +650,31 @@ public class RiftRegistry extends PersistentState {
     }
 
     private void removeEdge(RegistryVertex from, RegistryVertex to) {
-        this.graph.removeEdge(from, to);
+        this.graph.removeEdge(from.graphId, to.graphId);
+        this.linkChanged(from, to, false);
+        this.invalidateColors(from, to);
+    }
 
-        if (from instanceof PlayerRiftPointer) {
-            this.markDirty();
+    /**
+     * Drops the cached colors that depend on a link: those of both of its ends, and those of
+     * the rifts linking to its source, since a rift reference's color depends on whether its
+     * target only links back to it.
+     */
+    private void invalidateColors(RegistryVertex from, RegistryVertex to) {
+        if (from instanceof Rift) ((Rift) from).invalidateColor();
+        if (to instanceof Rift) ((Rift) to).invalidateColor();
+        this.invalidateSourceColors(from);
+    }
+
+    private void invalidateSourceColors(RegistryVertex vertex) {
+        for (int source : this.graph.sources(vertex.graphId)) {
+            RegistryVertex sourceVertex = this.graph.getVertex(source);
+            if (sourceVertex instanceof Rift) ((Rift) sourceVertex).invalidateColor();
         }
     }
 
     public void addLink(Location locationFrom, Location locationTo) {
+        long start = System.nanoTime();
         LOGGER.debug("Adding link " + locationFrom + " -> " + locationTo);
 
         Rift from = this.getRiftOrPlaceholder(locationFrom);
@@ -253,6 +687,7 @@ public class RiftRegistry extends PersistentState {
             from.targetAdded(to);
             to.sourceAdded(from);
         }
+        ADD_LINK_TIME.recordSince(start);
     }
 
     public void removeLink(Location locationFrom, Location locationTo) {
@@ -272,19 +707,262 @@ public class RiftRegistry extends PersistentState {
         LOGGER.debug("Setting DungeonLinkProperties for rift at " + location + " to " + properties);
         Rift rift = this.getRift(location);
         rift.properties = properties;
+        this.availableLinks.update(rift);
+        this.vertexChanged(rift);
+        rift.markDirty();
+    }
+
+    public void setDetached(Location location, boolean isDetached) {
+        Rift rift = this.getRift(location);
+        rift.isDetached = isDetached;
+        this.availableLinks.update(rift);
+        this.vertexChanged(rift);
         rift.markDirty();
     }
 
+    /**
+     * Notifies the rift at a location that a rift it was linked to or from is gone. If its
+     * chunk isn't loaded, the notification is saved and delivered once the chunk loads, the
+     * chunk is never loaded for it.
+     *
+     * @param gone The rift that is gone, or null if the target that is gone wasn't a rift
+     */
+    void notifyRift(Location location, Location gone, boolean targetGone) {
+        PendingRiftNotifications.Notification notification = new PendingRiftNotifications.Notification(location.pos, gone, targetGone);
+        ServerWorld world = getWorld(location.world);
+        if (world != null && world.getChunkManager().isChunkLoaded(location.pos.getX() >> 4, location.pos.getZ() >> 4)) {
+            BlockEntity blockEntity = world.getBlockEntity(location.pos);
+            if (blockEntity instanceof RiftBlockEntity) notification.deliver((RiftBlockEntity) blockEntity);
+            return;
+        }
+
+        RiftSubregistry subregistry = this.getSubregistry(location.world);
+        if (subregistry == null) return;
+        subregistry.notifications.add(notification);
+        subregistry.notificationsChanged();
+    }
+
+    /**
+     * Delivers the pending notifications and color updates of the rifts in a chunk at the end
+     * of the tick. They aren't delivered right away since the chunk is still being loaded.
+     */
+    public void chunkLoaded(ServerWorld world, ChunkPos chunk) {
+        REGISTRATIONS.chunkLoaded(world.getRegistryKey(), chunk);
+        this.colorQueue.chunkLoaded(world.getRegistryKey(), chunk);
+        RiftSubregistry subregistry = this.subregistries.get(world.getRegistryKey());
+        if (subregistry == null || !subregistry.notifications.contains(chunk)) return;
+        this.loadedChunks.computeIfAbsent(world.getRegistryKey(), key -> new LongOpenHashSet()).add(chunk.toLong());
+    }
+
+    /**
+     * Queues the rift block entity at a location to be registered on the server thread.
+     * Unlike the rest of the registry, this can be called from any thread, for example by
+     * features placing rifts during world generation.
+     */
+    public static void queueRegistration(Location location) {
+        REGISTRATIONS.add(location);
+    }
+
+    public void commitRegistrations() {
+        REGISTRATIONS.commit();
+    }
+
+    public void deliverNotifications() {
+        if (this.loadedChunks.isEmpty()) return;
+
+        Map<RegistryKey<World>, LongSet> loadedChunks = this.loadedChunks;
+        this.loadedChunks = new HashMap<>();
+        for (Map.Entry<RegistryKey<World>, LongSet> entry : loadedChunks.entrySet()) {
+            ServerWorld world = getWorld(entry.getKey());
+            RiftSubregistry subregistry = this.subregistries.get(entry.getKey());
+            if (world == null || subregistry == null) continue;
+
+            for (LongIterator iterator = entry.getValue().iterator(); iterator.hasNext(); ) {
+                ChunkPos chunk = new ChunkPos(iterator.nextLong());
+                if (!world.getChunkManager().isChunkLoaded(chunk.x, chunk.z)) continue; // Unloaded again, wait for the next load
+
+                for (PendingRiftNotifications.Notification notification : subregistry.notifications.remove(chunk)) {
+                    BlockEntity blockEntity = world.getBlockEntity(notification.rift);
+                    if (blockEntity instanceof RiftBlockEntity) notification.deliver((RiftBlockEntity) blockEntity);
+                }
+                subregistry.notificationsChanged();
+            }
+        }
+    }
+
+    /**
+     * Visits the rifts in any of the accepted groups that can still be linked to, whose virtual
+     * location is within {@code radius} blocks of {@code center} on the x and z axes and between
+     * minDepth and maxDepth, in any virtual world.
+     *
+     * @param radius The maximum x/z distance, or a negative number for no limit
+     */
+    public void forEachAvailableRiftNear(Set<Integer> acceptedGroups, VirtualLocation center, int radius, int minDepth, int maxDepth, SpatialIndex.Visitor<Rift> visitor) {
+        this.availableLinks.forEachNear(acceptedGroups, center, radius, minDepth, maxDepth, visitor);
+    }
+
+    /**
+     * Gets the virtual location of the rift at a location from its cache, or computes it if
+     * there is no rift registered there.
+     */
+    public VirtualLocation getVirtualLocation(Location location) {
+        Rift rift = this.getRiftOrNull(location);
+        return rift != null ? rift.getVirtualLocation() : VirtualLocation.fromLocation(location);
+    }
+
+    /**
+     * Recomputes the virtual locations of the rifts in a pocket, and moves the ones that
+     * can be linked to in the link index.
+     */
+    public void pocketVirtualLocationChanged(Pocket pocket) {
+        Int2ObjectMap<IntSet> pocketRifts = this.pocketRiftMap.get(pocket.world);
+        IntSet ids = pocketRifts != null ? pocketRifts.get(pocket.id) : null;
+        if (ids == null) return;
+
+        for (IntIterator iterator = ids.iterator(); iterator.hasNext(); ) {
+            Rift rift = (Rift) this.graph.getVertex(iterator.nextInt());
+            rift.invalidateVirtualLocation();
+            this.availableLinks.update(rift);
+            this.snapshotChanged(rift);
+        }
+    }
+
+    /**
+     * Recomputes the color of a rift at the end of the tick. Without updateSources, the rift
+     * itself asks for it, for example because its destination changed, so its cached color
+     * is dropped. With it, only the rifts whose cached color was dropped by a link change
+     * are recomputed.
+     *
+     * @param updateSources Whether the rifts linking to it should be recolored as well
+     */
+    public void queueColorUpdate(Rift rift, boolean updateSources) {
+        this.queueColorUpdate(rift.location, updateSources);
+    }
+
+    public void queueColorUpdate(Location location, boolean updateSources) {
+        if (updateSources) {
+            this.colorQueue.riftChanged(location);
+        } else {
+            Rift rift = this.getRiftOrNull(location);
+            if (rift != null) rift.invalidateColor();
+            this.colorQueue.colorChanged(location);
+        }
+    }
+
+    /**
+     * Starts a batch of changes, such as setting up all rifts of a pocket. Until the batch ends,
+     * rifts don't recompute their colors after every change, but once when it ends.
+     */
+    public void beginBatch() {
+        this.batchDepth++;
+    }
+
+    public void endBatch() {
+        if (this.batchDepth == 0) throw new IllegalStateException("No batch was started");
+        if (--this.batchDepth == 0) this.updateColors();
+    }
+
+    public boolean isBatching() {
+        return this.batchDepth > 0;
+    }
+
+    /**
+     * Registers several rifts and their destinations in one batch.
+     */
+    public void registerRifts(Collection<? extends RiftBlockEntity> rifts) {
+        this.beginBatch();
+        try {
+            for (RiftBlockEntity rift : rifts) rift.register();
+        } finally {
+            this.endBatch();
+        }
+    }
+
+    public void updateColors() {
+        this.colorQueue.flush(this);
+    }
+
+    /**
+     * Makes the next snapshot create the entry of a rift or the entrances of a pocket again.
+     */
+    private void snapshotChanged(RegistryVertex vertex) {
+        if (vertex instanceof Rift) {
+            Location location = ((Rift) vertex).location;
+            this.snapshotChangedRifts.computeIfAbsent(location.world, key -> new LongOpenHashSet()).add(location.pos.asLong());
+        } else if (vertex instanceof PocketEntrancePointer) {
+            PocketEntrancePointer pointer = (PocketEntrancePointer) vertex;
+            this.snapshotChangedPockets.computeIfAbsent(pointer.pocketDim, key -> new IntOpenHashSet()).add(pointer.pocketId);
+        }
+    }
+
+    /**
+     * Publishes a new snapshot if the registry changed since the last one. Called by the
+     * server thread once its changes for the tick are done.
+     */
+    public void publishSnapshot() {
+        if (this.snapshotChangedWorlds.isEmpty() && this.snapshotChangedRifts.isEmpty() && this.snapshotChangedPockets.isEmpty()) return;
+
+        Set<RegistryKey<World>> worlds = new HashSet<>(this.snapshotChangedWorlds);
+        worlds.addAll(this.snapshotChangedRifts.keySet());
+        worlds.addAll(this.snapshotChangedPockets.keySet());
+        Map<RegistryKey<World>, RiftRegistrySnapshot.WorldSnapshot> changedWorlds = new HashMap<>();
+        for (RegistryKey<World> world : worlds) {
+            changedWorlds.put(world, this.snapshotWorld(world));
+        }
+        this.snapshotChangedWorlds.clear();
+        this.snapshotChangedRifts.clear();
+        this.snapshotChangedPockets.clear();
+        snapshot = snapshot.withWorlds(changedWorlds);
+    }
+
+    private RiftRegistrySnapshot.WorldSnapshot snapshotWorld(RegistryKey<World> world) {
+        Long2IntMap ids = this.locationMap.get(world);
+        Int2IntMap pointers = this.pocketEntranceMap.get(world);
+        RiftRegistrySnapshot.WorldSnapshot previous = snapshot.getWorld(world);
+        LongSet changedRifts = this.snapshotChangedRifts.getOrDefault(world, LongSets.EMPTY_SET);
+        IntSet changedPockets = this.snapshotChangedPockets.getOrDefault(world, IntSets.EMPTY_SET);
+        if (previous == null || this.snapshotChangedWorlds.contains(world)) {
+            // Everything is copied, the rifts and pockets that aren't there anymore are removed
+            previous = RiftRegistrySnapshot.WorldSnapshot.EMPTY;
+            changedRifts = ids != null ? ids.keySet() : LongSets.EMPTY_SET;
+            changedPockets = pointers != null ? pointers.keySet() : IntSets.EMPTY_SET;
+        }
+
+        return previous.update(changedRifts, pos -> {
+            int id = ids != null ? ids.get(pos) : -1;
+            if (id == -1) return null;
+            return new RiftRegistrySnapshot.RiftEntry((Rift) this.graph.getVertex(id), this.riftLocations(this.graph.targets(id)), this.riftLocations(this.graph.sources(id)));
+        }, changedPockets, pocketId -> {
+            int id = pointers != null ? pointers.get(pocketId) : -1;
+            return id == -1 ? null : Collections.unmodifiableSet(this.riftLocations(this.graph.targets(id)));
+        });
+    }
+
+    /**
+     * Gets the snapshot of the registry published at the end of the last tick in which it
+     * changed. Unlike the registry, this can be called from any thread.
+     */
+    public static RiftRegistrySnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return Whether {@code target} is the only rift that the rift at {@code location} links to
+     */
+    public boolean isOnlyTarget(Location location, Location target) {
+        Rift rift = this.getRiftOrNull(location);
+        if (rift == null || this.graph.outDegree(rift.graphId) != 1) return false;
+        RegistryVertex onlyTarget = this.graph.getVertex(this.graph.firstTarget(rift.graphId));
+        return onlyTarget instanceof Rift && ((Rift) onlyTarget).location.equals(target);
+    }
+
     public Set<Location> getPocketEntrances(Pocket pocket) {
-        PocketEntrancePointer pointer = this.pocketEntranceMap.get(pocket);
-        if (pointer == null) {
+        Int2IntMap pointers = this.pocketEntranceMap.get(pocket.world);
+        int pointer = pointers == null ? -1 : pointers.get(pocket.id);
+        if (pointer == -1) {
             return Collections.emptySet();
         } else {
-            return this.graph.outgoingEdgesOf(pointer).stream()
-                    .map(this.graph::getEdgeTarget)
-                    .map(Rift.class::cast)
-                    .map(rift -> rift.location)
-                    .collect(Collectors.toSet());
+            return this.riftLocations(this.graph.targets(pointer));
         }
     }
 
@@ -294,88 +972,108 @@ public class RiftRegistry extends PersistentState {
 
     public void addPocketEntrance(Pocket pocket, Location location) {
         LOGGER.debug("Adding pocket entrance for pocket " + pocket.id + " in dimension " + pocket.world + " at " + location);
-        PocketEntrancePointer pointer = this.pocketEntranceMap.get(pocket);
+        Int2IntMap pointers = this.pocketEntrances(pocket.world);
+        PocketEntrancePointer pointer = (PocketEntrancePointer) this.graph.getVertex(pointers.get(pocket.id));
         if (pointer == null) {
             pointer = new PocketEntrancePointer(pocket.world, pocket.id);
             pointer.world = pocket.world;
-            this.graph.addVertex(pointer);
-            this.pocketEntranceMap.put(pocket, pointer);
-            this.uuidMap.put(pointer.id, pointer);
+            this.addVertex(pointer);
+            pointers.put(pocket.id, pointer.graphId);
+            this.vertexChanged(pointer);
         }
         Rift rift = this.getRift(location);
         this.addEdge(pointer, rift);
     }
 
+    /**
+     * Forgets the entrances of a pocket that was removed, so that its id can be reused.
+     */
+    public void removePocketEntrances(Pocket pocket) {
+        Int2IntMap pointers = this.pocketEntranceMap.get(pocket.world);
+        int id = pointers != null ? pointers.remove(pocket.id) : -1;
+        if (id == -1) return;
+        RegistryVertex pointer = this.graph.getVertex(id);
+        this.removeVertex(pointer);
+        this.vertexRemoved(pointer);
+    }
+
     public Location getPrivatePocketEntrance(UUID playerUUID) {
         // Try to get the last used entrance
-        PlayerRiftPointer entrancePointer = this.lastPrivatePocketEntrances.get(playerUUID);
-        Rift entrance = (Rift) GraphUtils.followPointer(this.graph, entrancePointer);
+        Rift entrance = this.followPointer(this.lastPrivatePocketEntrances, playerUUID);
         if (entrance != null) return entrance.location;
 
         // If there was no last used private entrance, get the first player's private pocket entrance
         return this.getPocketEntrance(PrivatePocketData.instance().getPrivatePocket(playerUUID));
     }
 
-    private void setPlayerRiftPointer(UUID playerUUID, Location rift, Map<UUID, PlayerRiftPointer> map) {
-        PlayerRiftPointer pointer = map.get(playerUUID);
-        if (pointer != null) {
-            this.graph.removeVertex(pointer);
-            map.remove(playerUUID);
-            this.uuidMap.remove(pointer.id);
-        }
-        if (rift != null) {
-            pointer = new PlayerRiftPointer(playerUUID);
-            this.graph.addVertex(pointer);
-            map.put(playerUUID, pointer);
-            this.uuidMap.put(pointer.id, pointer);
-            this.addEdge(pointer, this.getRift(rift));
-        }
+    private void setPlayerRiftPointer(UUID playerUUID, Location rift, String name) {
+        Rift target = rift != null ? this.getRift(rift) : null;
+        this.getPlayerRiftPointers(name).set(playerUUID, target != null ? target.graphId : -1);
+        this.changes.playerPointerChanged(name, playerUUID, target);
+        this.markDirty();
     }
 
     public void setLastPrivatePocketEntrance(UUID playerUUID, Location rift) {
         LOGGER.debug("Setting last used private pocket entrance for " + playerUUID + " at " + rift);
-        this.setPlayerRiftPointer(playerUUID, rift, this.lastPrivatePocketEntrances);
+        this.setPlayerRiftPointer(playerUUID, rift, "lastPrivatePocketEntrances");
+    }
+
+    /**
+     * @return The rifts that any player's last used entrance, exit or overworld rift points to
+     */
+    public Set<Location> getPlayerPointerTargets() {
+        Set<Location> targets = new HashSet<>();
+        for (PlayerRiftPointers pointers : Arrays.asList(this.lastPrivatePocketEntrances, this.lastPrivatePocketExits, this.overworldRifts)) {
+            for (Object2IntMap.Entry<UUID> entry : pointers.entries()) {
+                targets.add(((Rift) this.graph.getVertex(entry.getIntValue())).location);
+            }
+        }
+        return targets;
     }
 
     public Location getPrivatePocketExit(UUID playerUUID) {
-        PlayerRiftPointer entrancePointer = this.lastPrivatePocketExits.get(playerUUID);
-        Rift entrance = (Rift) GraphUtils.followPointer(this.graph, entrancePointer);
+        Rift entrance = this.followPointer(this.lastPrivatePocketExits, playerUUID);
         return entrance != null ? entrance.location : null;
     }
 
     public void setLastPrivatePocketExit(UUID playerUUID, Location rift) {
         LOGGER.debug("Setting last used private pocket exit for " + playerUUID + " at " + rift);
-        this.setPlayerRiftPointer(playerUUID, rift, this.lastPrivatePocketExits);
+        this.setPlayerRiftPointer(playerUUID, rift, "lastPrivatePocketExits");
     }
 
     public Location getOverworldRift(UUID playerUUID) {
-        PlayerRiftPointer entrancePointer = this.overworldRifts.get(playerUUID);
-        Rift rift = (Rift) GraphUtils.followPointer(this.graph, entrancePointer);
+        Rift rift = this.followPointer(this.overworldRifts, playerUUID);
         return rift != null ? rift.location : null;
     }
 
     public void setOverworldRift(UUID playerUUID, Location rift) {
         LOGGER.debug("Setting last used overworld rift for " + playerUUID + " at " + rift);
-        this.setPlayerRiftPointer(playerUUID, rift, this.overworldRifts);
+        this.setPlayerRiftPointer(playerUUID, rift, "overworldRifts");
     }
 
     public Collection<Rift> getRifts() {
-        return this.locationMap.values();
+        List<Rift> rifts = new ArrayList<>();
+        this.graph.forEachVertex(id -> {
+            RegistryVertex vertex = this.graph.getVertex(id);
+            if (vertex instanceof Rift) rifts.add((Rift) vertex);
+        });
+        return rifts;
     }
 
     public Set<Location> getTargets(Location location) {
-        return this.graph.outgoingEdgesOf(this.getRift(location)).stream()
-                .map(this.graph::getEdgeTarget)
-                .map(Rift.class::cast)
-                .map(rift -> rift.location)
-                .collect(Collectors.toSet());
+        return this.riftLocations(this.graph.targets(this.getRift(location).graphId));
     }
 
     public Set<Location> getSources(Location location) {
-        return this.graph.incomingEdgesOf(this.getRift(location)).stream()
-                .map(this.graph::getEdgeTarget)
-                .map(Rift.class::cast)
-                .map(rift -> rift.location)
-                .collect(Collectors.toSet());
+        return this.riftLocations(this.graph.sources(this.getRift(location).graphId));
+    }
+
+    private Set<Location> riftLocations(int[] ids) {
+        Set<Location> locations = new HashSet<>();
+        for (int id : ids) {
+            RegistryVertex vertex = this.graph.getVertex(id);
+            if (vertex instanceof Rift) locations.add(((Rift) vertex).location); // Skip pointers
+        }
+        return locations;
     }
 }
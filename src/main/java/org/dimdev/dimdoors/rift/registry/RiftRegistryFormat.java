@@ -0,0 +1,280 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.util.Location;
+import org.dimdev.dimdoors.util.NbtUtil;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+/**
+ * Reads and writes the vertices and links saved by the rift subregistries.
+ * <p>
+ * Version 1 saved every vertex as a compound through its codec and every link as a
+ * compound of two UUIDs. Version 2 packs them instead: a rift is its UUID, an index into
+ * a table of world ids, its packed BlockPos, a flag byte and, if it has link properties,
+ * the weights and varints for the remaining links and the groups. Links are four longs
+ * in a long array. Version 1 can still be read so that older saves are migrated.
+ * <p>
+ * Version 2 is written unless {@code general.riftRegistryFormat} selects version 1, which
+ * keeps the saves readable by older versions, for example to roll back. Version 1 saves
+ * placeholders as rifts, as it always did.
+ */
+public final class RiftRegistryFormat {
+    public static final int CODEC_VERSION = 1;
+    public static final int PACKED_VERSION = 2;
+
+    private static final int DETACHED = 1;
+    private static final int HAS_PROPERTIES = 2;
+    private static final int ONE_WAY = 4;
+    private static final int PLACEHOLDER = 8;
+
+    private RiftRegistryFormat() {
+    }
+
+    public static class Writer {
+        private final int version;
+        private final ListTag riftsNBT = new ListTag(); // Version 1
+        private final ListTag pocketsNBT = new ListTag(); // Version 1
+        private final ListTag linksNBT = new ListTag(); // Version 1
+        private final ListTag unlinksNBT = new ListTag(); // Version 1
+        private final Object2IntMap<RegistryKey<World>> worldIds = new Object2IntOpenHashMap<>();
+        private final ListTag worlds = new ListTag();
+        private final PacketByteBuf rifts = new PacketByteBuf(Unpooled.buffer());
+        private final PacketByteBuf pockets = new PacketByteBuf(Unpooled.buffer());
+        private final LongArrayList links = new LongArrayList();
+        private final LongArrayList unlinks = new LongArrayList();
+        private int riftCount;
+        private int pocketCount;
+
+        /**
+         * Creates a writer for the format version selected in the config.
+         */
+        public Writer() {
+            this(ModConfig.INSTANCE.getGeneralConfig().riftRegistryFormat);
+        }
+
+        public Writer(int version) {
+            if (version != CODEC_VERSION && version != PACKED_VERSION) {
+                throw new IllegalArgumentException("Unknown rift registry format version " + version);
+            }
+            this.version = version;
+        }
+
+        public void writeRift(Rift rift) {
+            if (this.version == CODEC_VERSION) {
+                this.riftsNBT.add(NbtUtil.serialize(rift, RegistryVertex.CODEC));
+                return;
+            }
+
+            LinkProperties properties = rift.properties;
+            int flags = (rift.isDetached ? DETACHED : 0)
+                    | (properties != null ? HAS_PROPERTIES : 0)
+                    | (properties != null && properties.oneWay ? ONE_WAY : 0)
+                    | (rift instanceof RiftPlaceholder ? PLACEHOLDER : 0);
+
+            this.rifts.writeUuid(rift.id);
+            this.rifts.writeVarInt(this.getWorldId(rift.location.world));
+            this.rifts.writeLong(rift.location.pos.asLong());
+            this.rifts.writeByte(flags);
+            if (properties != null) {
+                this.rifts.writeFloat(properties.floatingWeight);
+                this.rifts.writeFloat(properties.entranceWeight);
+                this.rifts.writeVarInt(zigZag(properties.linksRemaining));
+                Set<Integer> groups = properties.groups != null ? properties.groups : new HashSet<>();
+                this.rifts.writeVarInt(groups.size());
+                for (int group : groups) this.rifts.writeVarInt(zigZag(group));
+            }
+            this.riftCount++;
+        }
+
+        public void writePocketEntrance(PocketEntrancePointer pointer) {
+            if (this.version == CODEC_VERSION) {
+                this.pocketsNBT.add(NbtUtil.serialize(pointer, RegistryVertex.CODEC));
+                return;
+            }
+
+            this.pockets.writeUuid(pointer.id);
+            this.pockets.writeVarInt(this.getWorldId(pointer.pocketDim));
+            this.pockets.writeVarInt(pointer.pocketId);
+            this.pocketCount++;
+        }
+
+        public void writeLink(UUID from, UUID to, boolean exists) {
+            if (this.version == CODEC_VERSION) {
+                CompoundTag linkNBT = new CompoundTag();
+                linkNBT.putUuid("from", from);
+                linkNBT.putUuid("to", to);
+                (exists ? this.linksNBT : this.unlinksNBT).add(linkNBT);
+                return;
+            }
+
+            LongArrayList links = exists ? this.links : this.unlinks;
+            links.add(from.getMostSignificantBits());
+            links.add(from.getLeastSignificantBits());
+            links.add(to.getMostSignificantBits());
+            links.add(to.getLeastSignificantBits());
+        }
+
+        public CompoundTag toTag(CompoundTag tag) {
+            if (this.version == CODEC_VERSION) { // Without a formatVersion, like saves from before version 2
+                tag.put("rifts", this.riftsNBT);
+                tag.put("pockets", this.pocketsNBT);
+                tag.put("links", this.linksNBT);
+                tag.put("unlinks", this.unlinksNBT);
+                return tag;
+            }
+
+            tag.putInt("formatVersion", PACKED_VERSION);
+            tag.put("worlds", this.worlds);
+            tag.putInt("riftCount", this.riftCount);
+            tag.putByteArray("rifts", toByteArray(this.rifts));
+            tag.putInt("pocketCount", this.pocketCount);
+            tag.putByteArray("pockets", toByteArray(this.pockets));
+            tag.putLongArray("links", this.links.toLongArray());
+            tag.putLongArray("unlinks", this.unlinks.toLongArray());
+            return tag;
+        }
+
+        private int getWorldId(RegistryKey<World> world) {
+            int id = this.worldIds.getOrDefault(world, -1);
+            if (id == -1) {
+                id = this.worlds.size();
+                this.worlds.add(StringTag.of(world.getValue().toString()));
+                this.worldIds.put(world, id);
+            }
+            return id;
+        }
+    }
+
+    public static class Reader {
+        private final CompoundTag tag;
+        private final int version;
+        private final List<RegistryKey<World>> worlds = new ArrayList<>();
+
+        public Reader(CompoundTag tag) {
+            this.tag = tag;
+            this.version = tag.contains("formatVersion") ? tag.getInt("formatVersion") : CODEC_VERSION;
+            if (this.version > PACKED_VERSION) {
+                throw new IllegalArgumentException("Rift registry format version " + this.version + " is newer than the supported version " + PACKED_VERSION);
+            }
+            for (Tag world : tag.getList("worlds", 8)) {
+                this.worlds.add(RegistryKey.of(Registry.DIMENSION, new Identifier(world.asString())));
+            }
+        }
+
+        public List<Rift> readRifts() {
+            List<Rift> rifts = new ArrayList<>();
+            if (this.version == CODEC_VERSION) {
+                for (Tag riftNBT : this.tag.getList("rifts", 10)) {
+                    rifts.add(NbtUtil.deserialize(riftNBT, Rift.CODEC));
+                }
+                return rifts;
+            }
+
+            PacketByteBuf buf = new PacketByteBuf(Unpooled.wrappedBuffer(this.tag.getByteArray("rifts")));
+            int count = this.tag.getInt("riftCount");
+            for (int i = 0; i < count; i++) {
+                UUID id = buf.readUuid();
+                Location location = new Location(this.worlds.get(buf.readVarInt()), BlockPos.fromLong(buf.readLong()));
+                int flags = buf.readUnsignedByte();
+                LinkProperties properties = null;
+                if ((flags & HAS_PROPERTIES) != 0) {
+                    float floatingWeight = buf.readFloat();
+                    float entranceWeight = buf.readFloat();
+                    int linksRemaining = unZigZag(buf.readVarInt());
+                    int groupCount = buf.readVarInt();
+                    Set<Integer> groups = new HashSet<>();
+                    for (int j = 0; j < groupCount; j++) groups.add(unZigZag(buf.readVarInt()));
+                    properties = new LinkProperties(floatingWeight, entranceWeight, groups, linksRemaining, (flags & ONE_WAY) != 0);
+                }
+
+                Rift rift;
+                if ((flags & PLACEHOLDER) != 0) {
+                    rift = new RiftPlaceholder();
+                    rift.id = id;
+                    rift.location = location;
+                } else {
+                    rift = new Rift(id, location, (flags & DETACHED) != 0, properties);
+                }
+                rifts.add(rift);
+            }
+            return rifts;
+        }
+
+        public List<PocketEntrancePointer> readPocketEntrances() {
+            List<PocketEntrancePointer> pointers = new ArrayList<>();
+            if (this.version == CODEC_VERSION) {
+                for (Tag pocketNBT : this.tag.getList("pockets", 10)) {
+                    pointers.add(NbtUtil.deserialize(pocketNBT, PocketEntrancePointer.CODEC));
+                }
+                return pointers;
+            }
+
+            PacketByteBuf buf = new PacketByteBuf(Unpooled.wrappedBuffer(this.tag.getByteArray("pockets")));
+            int count = this.tag.getInt("pocketCount");
+            for (int i = 0; i < count; i++) {
+                UUID id = buf.readUuid();
+                PocketEntrancePointer pointer = new PocketEntrancePointer(this.worlds.get(buf.readVarInt()), buf.readVarInt());
+                pointer.id = id;
+                pointers.add(pointer);
+            }
+            return pointers;
+        }
+
+        /**
+         * @param exist Whether to read the links that were added, or the ones that were removed
+         */
+        public void readLinks(boolean exist, LinkConsumer consumer) {
+            String key = exist ? "links" : "unlinks";
+            if (this.version == CODEC_VERSION) {
+                for (Tag linkNBT : this.tag.getList(key, 10)) {
+                    consumer.accept(((CompoundTag) linkNBT).getUuid("from"), ((CompoundTag) linkNBT).getUuid("to"));
+                }
+                return;
+            }
+
+            long[] links = this.tag.getLongArray(key);
+            for (int i = 0; i + 3 < links.length; i += 4) {
+                consumer.accept(new UUID(links[i], links[i + 1]), new UUID(links[i + 2], links[i + 3]));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface LinkConsumer {
+        void accept(UUID from, UUID to);
+    }
+
+    private static byte[] toByteArray(PacketByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), bytes);
+        return bytes;
+    }
+
+    private static int zigZag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unZigZag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
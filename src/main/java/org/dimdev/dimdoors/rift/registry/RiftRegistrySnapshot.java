@@ -0,0 +1,285 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.dimdev.dimdoors.util.Location;
+import org.dimdev.dimdoors.util.math.SpatialIndex;
+import org.dimdev.dimdoors.world.pocket.VirtualLocation;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+/**
+ * An immutable copy of the rift registry, published by the server thread at the end of every
+ * tick in which the registry changed. It can be read from any thread without locking, for
+ * example to score link candidates or to gather statistics. Only the entries of the rifts and
+ * pockets that changed are created again, everything else is shared with the previous snapshot.
+ */
+public final class RiftRegistrySnapshot {
+    public static final RiftRegistrySnapshot EMPTY = new RiftRegistrySnapshot(0, Collections.emptyMap());
+
+    private final long version;
+    private final Map<RegistryKey<World>, WorldSnapshot> worlds;
+
+    private RiftRegistrySnapshot(long version, Map<RegistryKey<World>, WorldSnapshot> worlds) {
+        this.version = version;
+        this.worlds = worlds;
+    }
+
+    /**
+     * @param changedWorlds The new snapshots of the worlds that changed, null for worlds that have no rifts left
+     * @return A snapshot with the worlds that changed replaced
+     */
+    RiftRegistrySnapshot withWorlds(Map<RegistryKey<World>, WorldSnapshot> changedWorlds) {
+        Map<RegistryKey<World>, WorldSnapshot> worlds = new HashMap<>(this.worlds);
+        for (Map.Entry<RegistryKey<World>, WorldSnapshot> entry : changedWorlds.entrySet()) {
+            if (entry.getValue() != null) {
+                worlds.put(entry.getKey(), entry.getValue());
+            } else {
+                worlds.remove(entry.getKey());
+            }
+        }
+        return new RiftRegistrySnapshot(this.version + 1, Collections.unmodifiableMap(worlds));
+    }
+
+    /**
+     * @return A number that is increased every time a new snapshot is published
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    WorldSnapshot getWorld(RegistryKey<World> world) {
+        return this.worlds.get(world);
+    }
+
+    public RiftEntry getRift(Location location) {
+        WorldSnapshot world = this.worlds.get(location.world);
+        if (world == null) return null;
+        ChunkSnapshot chunk = world.chunks.get(ChunkPos.toLong(location.pos.getX() >> 4, location.pos.getZ() >> 4));
+        return chunk != null ? chunk.rifts.get(location.pos.asLong()) : null;
+    }
+
+    public boolean isRiftAt(Location location) {
+        RiftEntry rift = this.getRift(location);
+        return rift != null && !rift.placeholder;
+    }
+
+    public Set<Location> getTargets(Location location) {
+        RiftEntry rift = this.getRift(location);
+        return rift != null ? rift.targets : Collections.emptySet();
+    }
+
+    public Set<Location> getSources(Location location) {
+        RiftEntry rift = this.getRift(location);
+        return rift != null ? rift.sources : Collections.emptySet();
+    }
+
+    public Set<Location> getPocketEntrances(RegistryKey<World> pocketWorld, int pocketId) {
+        WorldSnapshot world = this.worlds.get(pocketWorld);
+        Set<Location> entrances = world != null ? world.pocketEntrances.get(pocketId) : null;
+        return entrances != null ? entrances : Collections.emptySet();
+    }
+
+    public Collection<RiftEntry> getRifts(RegistryKey<World> world) {
+        WorldSnapshot snapshot = this.worlds.get(world);
+        if (snapshot == null) return Collections.emptyList();
+        return new AbstractCollection<RiftEntry>() {
+            @Override
+            public Iterator<RiftEntry> iterator() {
+                return snapshot.chunks.values().stream().flatMap(chunk -> chunk.rifts.values().stream()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return snapshot.riftCount;
+            }
+        };
+    }
+
+    public int getRiftCount() {
+        int count = 0;
+        for (WorldSnapshot world : this.worlds.values()) count += world.riftCount;
+        return count;
+    }
+
+    public void forEachRift(Consumer<RiftEntry> consumer) {
+        for (WorldSnapshot world : this.worlds.values()) {
+            for (ChunkSnapshot chunk : world.chunks.values()) chunk.rifts.values().forEach(consumer);
+        }
+    }
+
+    /**
+     * Visits the rifts in any of the accepted groups that could be linked to when the snapshot
+     * was taken, whose virtual location is within {@code radius} blocks of {@code center} on the
+     * x and z axes and between minDepth and maxDepth, in any virtual world.
+     *
+     * @param radius The maximum x/z distance, or a negative number for no limit
+     */
+    public void forEachAvailableRiftNear(Set<Integer> acceptedGroups, VirtualLocation center, int radius, int minDepth, int maxDepth, SpatialIndex.Visitor<RiftEntry> visitor) {
+        for (WorldSnapshot world : this.worlds.values()) {
+            for (ChunkSnapshot chunk : world.chunks.values()) {
+                for (RiftEntry rift : chunk.available) {
+                    VirtualLocation location = rift.virtualLocation;
+                    if (location.getDepth() < minDepth || location.getDepth() > maxDepth) continue;
+                    if (radius >= 0 && (Math.abs((long) location.getX() - center.getX()) > radius || Math.abs((long) location.getZ() - center.getZ()) > radius)) continue;
+                    if (Collections.disjoint(rift.groups, acceptedGroups)) continue;
+                    visitor.visit(rift, location.getX(), location.getZ(), location.getDepth());
+                }
+            }
+        }
+    }
+
+    /**
+     * The rifts and pocket entrances of one world, with the rifts grouped by chunk. A new
+     * snapshot of a world only copies the chunks and entrances that changed, and shares the
+     * others and all unchanged entries with the previous one.
+     */
+    static final class WorldSnapshot {
+        static final WorldSnapshot EMPTY = new WorldSnapshot(new Long2ObjectOpenHashMap<>(), new Int2ObjectOpenHashMap<>(), 0);
+
+        final Long2ObjectMap<ChunkSnapshot> chunks; // Packed ChunkPos -> rifts in the chunk
+        final Int2ObjectMap<Set<Location>> pocketEntrances; // Pocket id -> entrances
+        final int riftCount;
+
+        private WorldSnapshot(Long2ObjectMap<ChunkSnapshot> chunks, Int2ObjectMap<Set<Location>> pocketEntrances, int riftCount) {
+            this.chunks = chunks;
+            this.pocketEntrances = pocketEntrances;
+            this.riftCount = riftCount;
+        }
+
+        /**
+         * @param changedRifts    Packed BlockPos of the rifts that changed, were added or removed
+         * @param rifts           Gets the current entry of a rift, or null if it was removed
+         * @param changedPockets  Ids of the pockets whose entrances changed
+         * @param pocketEntrances Gets the current entrances of a pocket, or null if it has none
+         * @return A snapshot with the changes applied, or null if the world has no rifts left
+         */
+        WorldSnapshot update(LongSet changedRifts, LongFunction<RiftEntry> rifts, IntSet changedPockets, IntFunction<Set<Location>> pocketEntrances) {
+            Long2ObjectMap<ChunkSnapshot> chunks = this.chunks;
+            int riftCount = this.riftCount;
+            if (!changedRifts.isEmpty()) {
+                Long2ObjectMap<LongList> changedChunks = new Long2ObjectOpenHashMap<>();
+                for (LongIterator iterator = changedRifts.iterator(); iterator.hasNext(); ) {
+                    long pos = iterator.nextLong();
+                    changedChunks.computeIfAbsent(ChunkPos.toLong(BlockPos.unpackLongX(pos) >> 4, BlockPos.unpackLongZ(pos) >> 4), key -> new LongArrayList()).add(pos);
+                }
+
+                chunks = new Long2ObjectOpenHashMap<>(this.chunks);
+                for (Long2ObjectMap.Entry<LongList> entry : changedChunks.long2ObjectEntrySet()) {
+                    ChunkSnapshot previous = chunks.get(entry.getLongKey());
+                    Long2ObjectMap<RiftEntry> chunkRifts = previous != null ? new Long2ObjectOpenHashMap<>(previous.rifts) : new Long2ObjectOpenHashMap<>();
+                    riftCount -= chunkRifts.size();
+                    for (LongIterator iterator = entry.getValue().iterator(); iterator.hasNext(); ) {
+                        long pos = iterator.nextLong();
+                        RiftEntry rift = rifts.apply(pos);
+                        if (rift != null) {
+                            chunkRifts.put(pos, rift);
+                        } else {
+                            chunkRifts.remove(pos);
+                        }
+                    }
+                    riftCount += chunkRifts.size();
+                    if (chunkRifts.isEmpty()) {
+                        chunks.remove(entry.getLongKey());
+                    } else {
+                        chunks.put(entry.getLongKey(), new ChunkSnapshot(chunkRifts));
+                    }
+                }
+            }
+
+            Int2ObjectMap<Set<Location>> entrances = this.pocketEntrances;
+            if (!changedPockets.isEmpty()) {
+                entrances = new Int2ObjectOpenHashMap<>(this.pocketEntrances);
+                for (IntIterator iterator = changedPockets.iterator(); iterator.hasNext(); ) {
+                    int pocketId = iterator.nextInt();
+                    Set<Location> pocketEntrance = pocketEntrances.apply(pocketId);
+                    if (pocketEntrance != null) {
+                        entrances.put(pocketId, pocketEntrance);
+                    } else {
+                        entrances.remove(pocketId);
+                    }
+                }
+            }
+
+            if (chunks.isEmpty() && entrances.isEmpty()) return null;
+            return new WorldSnapshot(chunks, entrances, riftCount);
+        }
+    }
+
+    static final class ChunkSnapshot {
+        final Long2ObjectMap<RiftEntry> rifts; // Packed BlockPos -> rift
+        final List<RiftEntry> available; // Rifts that can be linked to
+
+        ChunkSnapshot(Long2ObjectMap<RiftEntry> rifts) {
+            this.rifts = rifts;
+            List<RiftEntry> available = new ArrayList<>();
+            for (RiftEntry rift : rifts.values()) {
+                if (rift.available) available.add(rift);
+            }
+            this.available = available;
+        }
+    }
+
+    /**
+     * A rift as it was when the snapshot was taken.
+     */
+    public static final class RiftEntry {
+        public final Location location;
+        public final boolean placeholder;
+        public final boolean isDetached;
+        public final VirtualLocation virtualLocation; // Null for placeholders
+        public final float floatingWeight;
+        public final float entranceWeight;
+        public final int linksRemaining;
+        public final boolean oneWay;
+        public final Set<Integer> groups;
+        public final Set<Location> targets;
+        public final Set<Location> sources;
+        final boolean available;
+
+        RiftEntry(Rift rift, Set<Location> targets, Set<Location> sources) {
+            LinkProperties properties = rift.properties;
+            this.location = rift.location;
+            this.placeholder = rift instanceof RiftPlaceholder;
+            this.isDetached = rift.isDetached;
+            this.virtualLocation = this.placeholder ? null : rift.getVirtualLocation();
+            this.floatingWeight = properties != null ? properties.floatingWeight : 0;
+            this.entranceWeight = properties != null ? properties.entranceWeight : 0;
+            this.linksRemaining = properties != null ? properties.linksRemaining : 0;
+            this.oneWay = properties != null && properties.oneWay;
+            this.groups = properties != null && properties.groups != null ? Collections.unmodifiableSet(new HashSet<>(properties.groups)) : Collections.emptySet();
+            this.targets = Collections.unmodifiableSet(targets);
+            this.sources = Collections.unmodifiableSet(sources);
+            this.available = AvailableLinkIndex.isAvailable(rift);
+        }
+
+        public float getWeight() {
+            return this.isDetached ? this.floatingWeight : this.entranceWeight;
+        }
+    }
+}
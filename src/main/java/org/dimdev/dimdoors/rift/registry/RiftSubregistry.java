@@ -0,0 +1,81 @@
+package org.dimdev.dimdoors.rift.registry;
+
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.dimdev.dimdoors.util.JournaledPersistentState;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+/**
+ * The part of the {@link RiftRegistry} that is saved with one world: the rifts and pocket
+ * entrances in that world, and every link that has a source or destination in it. Links
+ * between two worlds are stored in both subregistries. Only the subregistries of worlds
+ * whose rifts changed are written when the game saves.
+ */
+public class RiftSubregistry extends JournaledPersistentState {
+    public static final String DATA_NAME = "rift_subregistry";
+
+    protected final RegistryKey<World> world;
+    protected final IntSet vertices = new IntOpenHashSet(); // Graph ids of the vertices stored in this world
+    protected RegistryChanges changes = new RegistryChanges(); // Changes since the last save, appended to the journal
+    protected PendingRiftNotifications notifications = new PendingRiftNotifications(); // For rifts in this world that weren't loaded
+    protected boolean notificationsChanged; // The journal has all pending notifications whenever they changed
+    protected RiftRegistry registry;
+    protected CompoundTag unloadedTag; // Read from the save, but not added to the registry yet
+
+    public RiftSubregistry(RegistryKey<World> world) {
+        super(DATA_NAME);
+        this.world = world;
+    }
+
+    @Override
+    public void fromTag(CompoundTag nbt) {
+        this.unloadedTag = nbt;
+        this.readGeneration(nbt);
+    }
+
+    @Override
+    public CompoundTag toTag(CompoundTag tag) {
+        this.writeGeneration(tag);
+        return this.registry.writeSubregistry(this, tag);
+    }
+
+    List<CompoundTag> readJournal() {
+        return this.readJournal(this.world);
+    }
+
+    @Override
+    protected boolean hasChanges() {
+        return !this.changes.isEmpty() || this.notificationsChanged;
+    }
+
+    @Override
+    protected CompoundTag writeChanges() {
+        CompoundTag tag = this.changes.toTag();
+        if (this.notificationsChanged) tag.put("notifications", this.notifications.toTag());
+        return tag;
+    }
+
+    @Override
+    protected void clearChanges() {
+        this.changes.clear();
+        this.notificationsChanged = false;
+    }
+
+    void notificationsChanged() {
+        this.notificationsChanged = true;
+        this.markDirty();
+    }
+
+    public RegistryKey<World> getWorld() {
+        return this.world;
+    }
+
+    public int size() {
+        return this.vertices.size();
+    }
+}
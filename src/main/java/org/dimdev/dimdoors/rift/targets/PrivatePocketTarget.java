@@ -34,7 +34,7 @@ public class PrivatePocketTarget extends VirtualTarget implements EntityTarget {
     public boolean receiveEntity(Entity entity, float yawOffset) {
         // TODO: make this recursive
         UUID uuid = EntityUtils.getOwner(entity).getUuid();
-        VirtualLocation virtualLocation = VirtualLocation.fromLocation(this.location);
+        VirtualLocation virtualLocation = RiftRegistry.instance().getVirtualLocation(this.location);
         if (uuid != null) {
             Pocket pocket = PrivatePocketData.instance().getPrivatePocket(uuid);
             if (pocket == null) { // generate the private pocket and get its entrances
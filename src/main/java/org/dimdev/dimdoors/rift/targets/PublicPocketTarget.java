@@ -37,7 +37,7 @@ public class PublicPocketTarget extends RestoringTarget {
 
     @Override
     public Location makeLinkTarget() {
-        VirtualLocation riftVirtualLocation = VirtualLocation.fromLocation(this.location);
+        VirtualLocation riftVirtualLocation = RiftRegistry.instance().getVirtualLocation(this.location);
         VirtualLocation newVirtualLocation;
         int depth = Math.max(riftVirtualLocation.getDepth(), 1);
         newVirtualLocation = new VirtualLocation(riftVirtualLocation.getWorld(), riftVirtualLocation.getX(), riftVirtualLocation.getZ(), depth);
@@ -5,19 +5,19 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.google.common.collect.Sets;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.DataResult;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import org.dimdev.dimdoors.DimensionalDoorsInitializer;
+import org.dimdev.dimdoors.ModConfig;
 import org.dimdev.dimdoors.block.ModBlocks;
 import org.dimdev.dimdoors.block.entity.DetachedRiftBlockEntity;
 import org.dimdev.dimdoors.block.entity.RiftBlockEntity;
 import org.dimdev.dimdoors.pockets.PocketGenerator;
 import org.dimdev.dimdoors.rift.registry.LinkProperties;
-import org.dimdev.dimdoors.rift.registry.Rift;
 import org.dimdev.dimdoors.rift.registry.RiftRegistry;
 import org.dimdev.dimdoors.util.Location;
+import org.dimdev.dimdoors.util.Metrics;
 import org.dimdev.dimdoors.util.math.MathUtil;
 import org.dimdev.dimdoors.world.pocket.Pocket;
 import org.dimdev.dimdoors.world.pocket.VirtualLocation;
@@ -39,6 +39,8 @@ public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTar
                 Codec.BOOL.fieldOf("noLinkBack").forGetter(target -> target.noLinkBack)
         ).apply(instance, RandomTarget::new);
     });
+    private static final Metrics.Timer RECEIVE_OTHER_TIME = Metrics.timer("random_target.receive_other");
+    private static final Metrics.Counter CANDIDATES = Metrics.counter("random_target.candidates");
 
     protected float newRiftWeight;
     protected double weightMaximum;
@@ -66,47 +68,47 @@ public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTar
 
     @Override
     public Target receiveOther() { // TODO: Wrap rather than replace
-        VirtualLocation virtualLocationHere = VirtualLocation.fromLocation(this.location);
+        long start = System.nanoTime();
+        try {
+            return this.selectTarget();
+        } finally {
+            RECEIVE_OTHER_TIME.recordSince(start);
+        }
+    }
+
+    private Target selectTarget() {
+        VirtualLocation virtualLocationHere = RiftRegistry.instance().getVirtualLocation(this.location);
 
         Map<Location, Float> riftWeights = new HashMap<>();
         if (this.newRiftWeight > 0) riftWeights.put(null, this.newRiftWeight);
 
-        for (Rift otherRift : RiftRegistry.instance().getRifts()) {
-            VirtualLocation otherVirtualLocation = VirtualLocation.fromLocation(otherRift.location);
-            if (otherRift.properties == null) continue;
+        // Rifts beyond the cutoff would only get a negligible weight, so only the rifts within it are looked up
+        double cutoff = ModConfig.INSTANCE.getDungeonsConfig().linkSearchCutoff * this.weightMaximum;
+        int coordRange = cutoff > 0 ? searchRange(cutoff, this.coordFactor) : -1;
+        int depthRangeUp = cutoff > 0 ? searchRange(cutoff, this.positiveDepthFactor) : -1;
+        int depthRangeDown = cutoff > 0 ? searchRange(cutoff, this.negativeDepthFactor) : -1;
+        int minDepth = depthRangeDown < 0 ? Integer.MIN_VALUE : (int) Math.max((long) virtualLocationHere.getDepth() - depthRangeDown, Integer.MIN_VALUE);
+        int maxDepth = depthRangeUp < 0 ? Integer.MAX_VALUE : (int) Math.min((long) virtualLocationHere.getDepth() + depthRangeUp, Integer.MAX_VALUE);
+
+        // Only rifts in an accepted group with links remaining and a non-zero weight are visited
+        RiftRegistry.instance().forEachAvailableRiftNear(this.acceptedGroups, virtualLocationHere, coordRange, minDepth, maxDepth, (otherRift, otherX, otherZ, otherDepth) -> {
+            CANDIDATES.increment();
             double otherWeight = otherRift.isDetached ? otherRift.properties.floatingWeight : otherRift.properties.entranceWeight;
-            if (otherWeight == 0 || Sets.intersection(this.acceptedGroups, otherRift.properties.groups).isEmpty())
-                continue;
-
-            // Calculate the distance as sqrt((coordFactor * coordDistance)^2 + (depthFactor * depthDifference)^2)
-            if (otherRift.properties.linksRemaining == 0) continue;
-            double depthDifference = otherVirtualLocation.getDepth() - virtualLocationHere.getDepth();
-            double coordDistance = Math.sqrt(this.sq(otherVirtualLocation.getX() - virtualLocationHere.getX())
-                    + this.sq(otherVirtualLocation.getZ() - virtualLocationHere.getZ()));
-            double depthFactor = depthDifference > 0 ? this.positiveDepthFactor : this.negativeDepthFactor;
-            double distance = Math.sqrt(this.sq(this.coordFactor * coordDistance) + this.sq(depthFactor * depthDifference));
-
-            // Calculate the weight as 4m/pi w/(m^2/d + d)^2. This is similar to how gravitational/electromagnetic attraction
-            // works in physics (G m1 m2/d^2 and k_e m1 m2/d^2). Even though we add a depth dimension to the world, we keep
-            // the weight inversly proportionally to the area of a sphere (the square of the distance) rather than a
-            // hypersphere (the cube of the area) because the y coordinate does not matter for now. We use m^2/d + d
-            // rather than d such that the probability near 0 tends to 0 rather than infinity. f(m^2/d) is a special case
-            // of f((m^(a+1)/a)/d^a). m is the location of f's maximum. The constant 4m/pi makes it such that a newRiftWeight
-            // of 1 is equivalent to having a total link weight of 1 distributed equally across all layers.
-            // TODO: We might want an a larger than 1 to make the function closer to 1/d^2
-            double weight = 4 * this.weightMaximum / Math.PI * otherWeight / this.sq(this.sq(this.weightMaximum) / distance + distance);
+            double weight = LinkWeight.of(otherWeight, otherX - virtualLocationHere.getX(), otherZ - virtualLocationHere.getZ(), otherDepth - virtualLocationHere.getDepth(),
+                    this.weightMaximum, this.coordFactor, this.positiveDepthFactor, this.negativeDepthFactor, cutoff);
+            if (weight < 0) return;
             riftWeights.put(otherRift.location, (float) weight);
-        }
+        });
 
         Location selectedLink;
-        if (riftWeights.size() == 0) {
+        if (!MathUtil.hasPositiveWeight(riftWeights)) { // Weights can round to 0, and null stands for a new rift
             if (this.newRiftWeight == -1) {
                 selectedLink = null;
             } else {
                 return null;
             }
         } else {
-            selectedLink = MathUtil.weightedRandom(riftWeights);
+            selectedLink = MathUtil.weightedRandom(riftWeights, this.location.getWorld().random);
         }
 
         // Check if we have to generate a new rift
@@ -197,8 +199,52 @@ public class RandomTarget extends VirtualTarget { // TODO: Split into DungeonTar
         }
     }
 
-    private double sq(double a) {
-        return a * a;
+    /**
+     * Calculates how far along an axis a rift can be before its distance exceeds {@code distance}.
+     *
+     * @return The range in blocks, or -1 if the axis doesn't contribute to the distance
+     */
+    private static int searchRange(double distance, double factor) {
+        return factor > 0 ? (int) Math.min(Math.ceil(distance / factor), Integer.MAX_VALUE) : -1;
+    }
+
+    /**
+     * The weight RandomTarget gives a link to a rift. It is kept in its own class so that it can
+     * be used without loading the target types, for example by the link selection benchmark.
+     */
+    public static final class LinkWeight {
+        private LinkWeight() {
+        }
+
+        /**
+         * @param otherWeight     The floating or entrance weight of the rift, depending on whether it is detached
+         * @param coordDistanceX  The x distance between the virtual locations of the two rifts
+         * @param coordDistanceZ  The z distance between the virtual locations of the two rifts
+         * @param depthDifference The depth of the rift minus the depth of the rift linking to it
+         * @param cutoff          The distance beyond which rifts aren't linked to, or 0 for no cutoff
+         * @return The weight, or -1 if the rift is beyond the cutoff
+         */
+        public static double of(double otherWeight, int coordDistanceX, int coordDistanceZ, int depthDifference, double weightMaximum, double coordFactor, double positiveDepthFactor, double negativeDepthFactor, double cutoff) {
+            // Calculate the distance as sqrt((coordFactor * coordDistance)^2 + (depthFactor * depthDifference)^2)
+            double coordDistance = Math.sqrt(sq(coordDistanceX) + sq(coordDistanceZ));
+            double depthFactor = depthDifference > 0 ? positiveDepthFactor : negativeDepthFactor;
+            double distance = Math.sqrt(sq(coordFactor * coordDistance) + sq(depthFactor * depthDifference));
+            if (cutoff > 0 && distance > cutoff) return -1;
+
+            // Calculate the weight as 4m/pi w/(m^2/d + d)^2. This is similar to how gravitational/electromagnetic attraction
+            // works in physics (G m1 m2/d^2 and k_e m1 m2/d^2). Even though we add a depth dimension to the world, we keep
+            // the weight inversly proportionally to the area of a sphere (the square of the distance) rather than a
+            // hypersphere (the cube of the area) because the y coordinate does not matter for now. We use m^2/d + d
+            // rather than d such that the probability near 0 tends to 0 rather than infinity. f(m^2/d) is a special case
+            // of f((m^(a+1)/a)/d^a). m is the location of f's maximum. The constant 4m/pi makes it such that a newRiftWeight
+            // of 1 is equivalent to having a total link weight of 1 distributed equally across all layers.
+            // TODO: We might want an a larger than 1 to make the function closer to 1/d^2
+            return 4 * weightMaximum / Math.PI * otherWeight / sq(sq(weightMaximum) / distance + distance);
+        }
+
+        private static double sq(double a) {
+            return a * a;
+        }
     }
 
     public float getNewRiftWeight() {
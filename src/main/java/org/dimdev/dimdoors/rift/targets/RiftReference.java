@@ -1,7 +1,5 @@
 package org.dimdev.dimdoors.rift.targets;
 
-import java.util.Set;
-
 import org.dimdev.dimdoors.rift.registry.RiftRegistry;
 import org.dimdev.dimdoors.util.Location;
 import org.dimdev.dimdoors.util.RGBA;
@@ -70,11 +68,8 @@ public abstract class RiftReference extends VirtualTarget {
     @Override
     public RGBA getColor() {
         Location target = this.getReferencedLocation();
-        if (target != null && RiftRegistry.instance().isRiftAt(target)) {
-            Set<Location> otherRiftTargets = RiftRegistry.instance().getTargets(target);
-            if (otherRiftTargets.size() == 1 && otherRiftTargets.contains(this.location)) {
-                return new RGBA(0, 1, 0, 1);
-            }
+        if (target != null && RiftRegistry.instance().isRiftAt(target) && RiftRegistry.instance().isOnlyTarget(target, this.location)) {
+            return new RGBA(0, 1, 0, 1);
         }
         return new RGBA(1, 0, 0, 1);
     }
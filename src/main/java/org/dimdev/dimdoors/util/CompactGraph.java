@@ -0,0 +1,253 @@
+package org.dimdev.dimdoors.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A directed graph without parallel edges whose vertices are identified by dense
+ * int ids. Adjacency is stored as primitive in/out arrays per vertex, so an edge
+ * costs two array slots rather than an edge object and several hash entries.
+ * <p>
+ * Ids of removed vertices are reused by later additions, so an id must not be kept
+ * after its vertex was removed.
+ *
+ * @param <V> The type of the vertex payloads
+ */
+public final class CompactGraph<V> {
+    private static final int[] NO_EDGES = new int[0];
+
+    private Object[] vertices;
+    private int[][] outgoing;
+    private int[] outDegrees;
+    private int[][] incoming;
+    private int[] inDegrees;
+
+    private int[] freeIds = new int[8];
+    private int freeCount;
+    private int nextId; // One past the highest id ever handed out
+    private int vertexCount;
+    private int edgeCount;
+
+    public CompactGraph() {
+        this(16);
+    }
+
+    public CompactGraph(int expectedVertices) {
+        int capacity = Math.max(expectedVertices, 1);
+        this.vertices = new Object[capacity];
+        this.outgoing = new int[capacity][];
+        this.outDegrees = new int[capacity];
+        this.incoming = new int[capacity][];
+        this.inDegrees = new int[capacity];
+    }
+
+    /**
+     * @return The id of the new vertex
+     */
+    public int addVertex(V vertex) {
+        if (vertex == null) throw new IllegalArgumentException("Vertex can't be null");
+        int id;
+        if (this.freeCount > 0) {
+            id = this.freeIds[--this.freeCount];
+        } else {
+            id = this.nextId++;
+            if (id == this.vertices.length) this.grow();
+        }
+        this.vertices[id] = vertex;
+        this.outgoing[id] = NO_EDGES;
+        this.incoming[id] = NO_EDGES;
+        this.vertexCount++;
+        return id;
+    }
+
+    /**
+     * Replaces the payload of a vertex, keeping all of its edges.
+     *
+     * @return The previous payload
+     */
+    public V replaceVertex(int id, V vertex) {
+        V old = this.getVertex(id);
+        if (old == null) throw new IllegalArgumentException("No vertex with id " + id);
+        if (vertex == null) throw new IllegalArgumentException("Vertex can't be null");
+        this.vertices[id] = vertex;
+        return old;
+    }
+
+    /**
+     * Removes a vertex and all edges to and from it.
+     *
+     * @return The removed payload, or null if there was no vertex with that id
+     */
+    public V removeVertex(int id) {
+        V vertex = this.getVertex(id);
+        if (vertex == null) return null;
+
+        int[] out = this.outgoing[id];
+        for (int i = this.outDegrees[id] - 1; i >= 0; i--) {
+            int target = out[i];
+            if (target != id) this.inDegrees[target] = removeValue(this.incoming[target], this.inDegrees[target], id);
+        }
+        int[] in = this.incoming[id];
+        for (int i = this.inDegrees[id] - 1; i >= 0; i--) {
+            int source = in[i];
+            if (source != id) this.outDegrees[source] = removeValue(this.outgoing[source], this.outDegrees[source], id);
+        }
+        this.edgeCount -= this.outDegrees[id] + this.inDegrees[id];
+        if (this.containsEdge(id, id)) this.edgeCount++; // The self-loop was counted twice
+
+        this.vertices[id] = null;
+        this.outgoing[id] = null;
+        this.incoming[id] = null;
+        this.outDegrees[id] = 0;
+        this.inDegrees[id] = 0;
+        if (this.freeCount == this.freeIds.length) this.freeIds = Arrays.copyOf(this.freeIds, this.freeCount * 2);
+        this.freeIds[this.freeCount++] = id;
+        this.vertexCount--;
+        return vertex;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getVertex(int id) {
+        return id >= 0 && id < this.nextId ? (V) this.vertices[id] : null;
+    }
+
+    public boolean containsVertex(int id) {
+        return this.getVertex(id) != null;
+    }
+
+    /**
+     * @return Whether the edge was added, false if it already existed
+     */
+    public boolean addEdge(int from, int to) {
+        this.checkVertex(from);
+        this.checkVertex(to);
+        if (this.containsEdge(from, to)) return false;
+
+        this.outgoing[from] = append(this.outgoing[from], this.outDegrees[from]++, to);
+        this.incoming[to] = append(this.incoming[to], this.inDegrees[to]++, from);
+        this.edgeCount++;
+        return true;
+    }
+
+    /**
+     * @return Whether the edge existed
+     */
+    public boolean removeEdge(int from, int to) {
+        if (!this.containsEdge(from, to)) return false;
+        this.outDegrees[from] = removeValue(this.outgoing[from], this.outDegrees[from], to);
+        this.inDegrees[to] = removeValue(this.incoming[to], this.inDegrees[to], from);
+        this.edgeCount--;
+        return true;
+    }
+
+    public boolean containsEdge(int from, int to) {
+        if (!this.containsVertex(from)) return false;
+        int[] out = this.outgoing[from];
+        for (int i = 0; i < this.outDegrees[from]; i++) {
+            if (out[i] == to) return true;
+        }
+        return false;
+    }
+
+    public int outDegree(int id) {
+        return this.containsVertex(id) ? this.outDegrees[id] : 0;
+    }
+
+    public int inDegree(int id) {
+        return this.containsVertex(id) ? this.inDegrees[id] : 0;
+    }
+
+    /**
+     * @return The target of the first outgoing edge of a vertex, or -1 if it has none
+     */
+    public int firstTarget(int id) {
+        return this.outDegree(id) > 0 ? this.outgoing[id][0] : -1;
+    }
+
+    /**
+     * @return A copy of the ids the vertex has edges to
+     */
+    public int[] targets(int id) {
+        return this.containsVertex(id) ? Arrays.copyOf(this.outgoing[id], this.outDegrees[id]) : NO_EDGES;
+    }
+
+    /**
+     * @return A copy of the ids that have edges to the vertex
+     */
+    public int[] sources(int id) {
+        return this.containsVertex(id) ? Arrays.copyOf(this.incoming[id], this.inDegrees[id]) : NO_EDGES;
+    }
+
+    public void forEachTarget(int id, IntConsumer consumer) {
+        if (!this.containsVertex(id)) return;
+        int[] out = this.outgoing[id];
+        for (int i = 0; i < this.outDegrees[id]; i++) consumer.accept(out[i]);
+    }
+
+    public void forEachSource(int id, IntConsumer consumer) {
+        if (!this.containsVertex(id)) return;
+        int[] in = this.incoming[id];
+        for (int i = 0; i < this.inDegrees[id]; i++) consumer.accept(in[i]);
+    }
+
+    public void forEachVertex(IntConsumer consumer) {
+        for (int id = 0; id < this.nextId; id++) {
+            if (this.vertices[id] != null) consumer.accept(id);
+        }
+    }
+
+    public void forEachEdge(EdgeConsumer consumer) {
+        for (int id = 0; id < this.nextId; id++) {
+            if (this.vertices[id] == null) continue;
+            int[] out = this.outgoing[id];
+            for (int i = 0; i < this.outDegrees[id]; i++) consumer.accept(id, out[i]);
+        }
+    }
+
+    public int vertexCount() {
+        return this.vertexCount;
+    }
+
+    public int edgeCount() {
+        return this.edgeCount;
+    }
+
+    private void checkVertex(int id) {
+        if (!this.containsVertex(id)) throw new IllegalArgumentException("No vertex with id " + id);
+    }
+
+    private void grow() {
+        int capacity = this.vertices.length * 2;
+        this.vertices = Arrays.copyOf(this.vertices, capacity);
+        this.outgoing = Arrays.copyOf(this.outgoing, capacity);
+        this.outDegrees = Arrays.copyOf(this.outDegrees, capacity);
+        this.incoming = Arrays.copyOf(this.incoming, capacity);
+        this.inDegrees = Arrays.copyOf(this.inDegrees, capacity);
+    }
+
+    private static int[] append(int[] array, int size, int value) {
+        if (size == array.length) array = Arrays.copyOf(array, Math.max(2, size * 2));
+        array[size] = value;
+        return array;
+    }
+
+    /**
+     * Removes a value by moving the last element into its slot.
+     *
+     * @return The new size
+     */
+    private static int removeValue(int[] array, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (array[i] == value) {
+                array[i] = array[size - 1];
+                return size - 1;
+            }
+        }
+        return size;
+    }
+
+    @FunctionalInterface
+    public interface EdgeConsumer {
+        void accept(int from, int to);
+    }
+}
@@ -0,0 +1,131 @@
+package org.dimdev.dimdoors.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.PersistentState;
+import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
+
+import static org.dimdev.dimdoors.DimensionalDoorsInitializer.getServer;
+
+/**
+ * A persistent state that appends the changes since the last save to a journal instead of
+ * rewriting all of its data. It is only fully saved (compacted) when there is no full save
+ * yet, or the journal has grown large compared to it. The journal is named after the state
+ * and is replayed by the subclass after loading the full save.
+ *
+ * <p>Every save has a generation, one more than the previous save's. Segments are stamped with
+ * theirs, and the full save with the generation of the last change it contains, so segments
+ * left over from before a full save (for example because the server stopped before the journal
+ * could be deleted) are skipped instead of being replayed over newer data.
+ */
+public abstract class JournaledPersistentState extends PersistentState {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAX_JOURNAL_SEGMENTS = 512;
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024; // Bytes of journal below which a full save isn't worth it
+
+    private NbtJournal journal;
+    private boolean fullSaveRequired;
+    private long generation; // Of the last save, full or appended to the journal
+
+    public JournaledPersistentState(String key) {
+        super(key);
+    }
+
+    protected abstract boolean hasChanges();
+
+    protected abstract CompoundTag writeChanges();
+
+    protected abstract void clearChanges();
+
+    /**
+     * Reads the generation of the full save, to be called by the subclass's {@link #fromTag}.
+     */
+    protected void readGeneration(CompoundTag tag) {
+        this.generation = tag.getLong("generation");
+    }
+
+    /**
+     * Writes the generation of the full save, to be called by the subclass's {@link #toTag}.
+     */
+    protected void writeGeneration(CompoundTag tag) {
+        tag.putLong("generation", this.generation);
+    }
+
+    /**
+     * Reads the journal of this state in the data directory of a world.
+     *
+     * @return The segments appended since the last full save, in order
+     */
+    protected List<CompoundTag> readJournal(RegistryKey<World> world) {
+        File dataDirectory = new File(DimensionType.getSaveDirectory(world, getServer().getSavePath(WorldSavePath.ROOT).toFile()), "data");
+        this.journal = new NbtJournal(new File(dataDirectory, this.getId() + "_journal.dat"));
+
+        List<CompoundTag> segments = new ArrayList<>();
+        int stale = 0;
+        for (CompoundTag segment : this.journal.read()) {
+            // Segments from before generations were saved have none and are always replayed
+            if (segment.contains("generation") && segment.getLong("generation") <= this.generation) {
+                stale++;
+                continue;
+            }
+            this.generation = Math.max(this.generation, segment.getLong("generation"));
+            segments.add(segment);
+        }
+        if (stale > 0) {
+            LOGGER.warn("Skipped " + stale + " segments of journal " + this.journal.getFile() + " that are older than the full save");
+            this.requireFullSave(); // They would otherwise be skipped again on every load
+        }
+        return segments;
+    }
+
+    /**
+     * Makes the next save a full save, for example after data was migrated from an older format.
+     */
+    public void requireFullSave() {
+        this.fullSaveRequired = true;
+        this.markDirty();
+    }
+
+    @Override
+    public void save(File file) {
+        if (!this.isDirty()) return;
+        if (this.journal == null) this.journal = new NbtJournal(new File(file.getParentFile(), this.getId() + "_journal.dat"));
+
+        boolean compact = this.fullSaveRequired
+                || !file.exists()
+                || this.journal.isDamaged()
+                || this.journal.getSegmentCount() >= MAX_JOURNAL_SEGMENTS
+                || this.journal.length() > Math.max(MIN_COMPACTION_SIZE, file.length() / 2);
+
+        this.generation++;
+        if (!compact) {
+            try {
+                if (this.hasChanges()) {
+                    CompoundTag segment = this.writeChanges();
+                    segment.putLong("generation", this.generation);
+                    this.journal.append(segment);
+                }
+                this.clearChanges();
+                this.setDirty(false);
+                return;
+            } catch (IOException e) {
+                LOGGER.error("Could not append to journal " + this.journal.getFile() + ", doing a full save instead", e);
+            }
+        }
+
+        super.save(file);
+        this.journal.delete();
+        this.clearChanges();
+        this.fullSaveRequired = false;
+    }
+}
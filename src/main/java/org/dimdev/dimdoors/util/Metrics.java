@@ -0,0 +1,149 @@
+package org.dimdev.dimdoors.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and latency histograms to find out how much of the tick time the mod's
+ * registries take. Counters and timers can be updated from any thread. Gauges are only read
+ * when the metrics are dumped, by the server thread.
+ */
+public final class Metrics {
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, key -> new Timer());
+    }
+
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * @return One line for every metric, sorted by name within gauges, counters and timers
+     */
+    public static List<String> dump() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+            String value;
+            try {
+                value = Long.toString(entry.getValue().getAsLong());
+            } catch (RuntimeException e) {
+                value = "unavailable (" + e.getMessage() + ")";
+            }
+            lines.add(entry.getKey() + " = " + value);
+        }
+        for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+            lines.add(entry.getKey() + " = " + entry.getValue().get());
+        }
+        for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+            Timer timer = entry.getValue();
+            lines.add(String.format("%s: count=%d mean=%.3fms p50<%.3fms p99<%.3fms max=%.3fms", entry.getKey(),
+                    timer.getCount(), timer.getMeanMillis(), timer.getPercentileMillis(0.5), timer.getPercentileMillis(0.99), timer.getMaxMillis()));
+        }
+        return lines;
+    }
+
+    public static void reset() {
+        COUNTERS.values().forEach(Counter::reset);
+        TIMERS.values().forEach(Timer::reset);
+    }
+
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            this.count.increment();
+        }
+
+        public void add(long amount) {
+            this.count.add(amount);
+        }
+
+        public long get() {
+            return this.count.sum();
+        }
+
+        public void reset() {
+            this.count.reset();
+        }
+    }
+
+    /**
+     * A latency histogram. Durations are counted in power of two buckets of microseconds,
+     * so percentiles are upper bounds within a factor of two.
+     */
+    public static final class Timer {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS); // Bucket i counts durations below 2^i microseconds
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        /**
+         * @param startNanos The {@link System#nanoTime()} at which the timed operation started
+         */
+        public void recordSince(long startNanos) {
+            this.record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            long micros = Math.max(nanos / 1000, 0);
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            this.buckets.incrementAndGet(bucket);
+            this.count.increment();
+            this.totalNanos.add(nanos);
+            this.maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        public double getMeanMillis() {
+            long count = this.count.sum();
+            return count == 0 ? 0 : this.totalNanos.sum() / 1e6 / count;
+        }
+
+        public double getMaxMillis() {
+            return this.maxNanos.get() / 1e6;
+        }
+
+        public double getPercentileMillis(double percentile) {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) count += this.buckets.get(i);
+            if (count == 0) return 0;
+
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= rank) return (1L << i) / 1e3;
+            }
+            return this.getMaxMillis();
+        }
+
+        public void reset() {
+            for (int i = 0; i < BUCKETS; i++) this.buckets.set(i, 0);
+            this.count.reset();
+            this.totalNanos.reset();
+            this.maxNanos.set(0);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.dimdev.dimdoors.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+
+/**
+ * An append-only file of NBT segments. Each segment is a compressed compound prefixed
+ * with its length, so appending never rewrites what is already in the file. A segment
+ * that was only partially written (for example because the server crashed) ends the journal.
+ */
+public class NbtJournal {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final File file;
+    private int segmentCount;
+    private boolean damaged;
+
+    public NbtJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all complete segments in the order they were appended.
+     */
+    public List<CompoundTag> read() {
+        List<CompoundTag> segments = new ArrayList<>();
+        this.segmentCount = 0;
+        this.damaged = false;
+        if (!this.file.exists()) return segments;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            while (true) {
+                int first = in.read();
+                if (first == -1) break; // End of the last segment
+                int length = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedShort();
+                byte[] data = new byte[length];
+                in.readFully(data);
+                segments.add(NbtIo.readCompressed(new ByteArrayInputStream(data)));
+            }
+        } catch (IOException e) {
+            LOGGER.error("Journal " + this.file + " is damaged after " + segments.size() + " segments, ignoring the rest", e);
+            this.damaged = true;
+        }
+        this.segmentCount = segments.size();
+        return segments;
+    }
+
+    public void append(CompoundTag segment) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(segment, data);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)))) {
+            out.writeInt(data.size());
+            data.writeTo(out);
+        }
+        this.segmentCount++;
+    }
+
+    public void delete() {
+        if (this.file.exists() && !this.file.delete()) {
+            LOGGER.error("Could not delete journal " + this.file);
+        }
+        this.segmentCount = 0;
+        this.damaged = false;
+    }
+
+    public long length() {
+        return this.file.length();
+    }
+
+    public int getSegmentCount() {
+        return this.segmentCount;
+    }
+
+    /**
+     * @return Whether segments after a damaged one were dropped when the journal was last read.
+     * Anything appended after the damage would be unreadable, so the journal should be compacted.
+     */
+    public boolean isDamaged() {
+        return this.damaged;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+}
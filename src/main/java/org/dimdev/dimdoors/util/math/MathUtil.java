@@ -2,20 +2,47 @@ package org.dimdev.dimdoors.util.math;
 
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public final class MathUtil {
     public static <T> T weightedRandom(Map<T, Float> weights) {
-        if (weights.size() == 0) return null;
-        int totalWeight = 0;
+        return weightedRandom(weights, ThreadLocalRandom.current());
+    }
+
+    /**
+     * @return Whether any value of a map is a positive weight, so that a key can be picked
+     */
+    public static <T> boolean hasPositiveWeight(Map<T, Float> weights) {
         for (float weight : weights.values()) {
-            totalWeight += weight;
+            if (weight > 0) return true;
         }
-        Random random = new Random();
-        float f = random.nextFloat() * totalWeight;
+        return false;
+    }
+
+    /**
+     * Picks a random key of a map with probability proportional to its value. This does a
+     * linear scan, so for weights that are sampled more than once, build a {@link WeightedSampler}.
+     * A key may be null, so callers check {@link #hasPositiveWeight} first rather than
+     * relying on a null result.
+     *
+     * @return The chosen key
+     * @throws IllegalArgumentException If there are no positive weights
+     */
+    public static <T> T weightedRandom(Map<T, Float> weights, Random random) {
+        double totalWeight = 0;
+        for (float weight : weights.values()) {
+            if (weight > 0) totalWeight += weight;
+        }
+        if (totalWeight <= 0) throw new IllegalArgumentException("There are no positive weights to pick from");
+
+        double f = random.nextDouble() * totalWeight;
+        T last = null;
         for (Map.Entry<T, Float> e : weights.entrySet()) {
+            if (e.getValue() <= 0) continue;
             f -= e.getValue();
             if (f < 0) return e.getKey();
+            last = e.getKey();
         }
-        return null;
+        return last; // Rounding error
     }
 }
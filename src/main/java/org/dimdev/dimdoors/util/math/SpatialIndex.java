@@ -0,0 +1,135 @@
+package org.dimdev.dimdoors.util.math;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * Buckets values by an (x, z, depth) coordinate into square x/z cells so that
+ * all values within a certain radius of a point can be visited without walking
+ * every value in the index.
+ *
+ * @param <T> The type of the indexed values. Values are compared by equals/hashCode.
+ */
+public final class SpatialIndex<T> {
+    private static final int CELL_SHIFT = 8; // 256x256 cells
+
+    private final Long2ObjectMap<List<Entry<T>>> cells = new Long2ObjectOpenHashMap<>();
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    public void put(T value, int x, int z, int depth) {
+        this.remove(value);
+        Entry<T> entry = new Entry<>(value, x, z, depth);
+        List<Entry<T>> cell = this.cells.computeIfAbsent(cellKey(x >> CELL_SHIFT, z >> CELL_SHIFT), key -> new ArrayList<>());
+        entry.slot = cell.size();
+        cell.add(entry);
+        this.entries.put(value, entry);
+    }
+
+    public boolean remove(T value) {
+        Entry<T> entry = this.entries.remove(value);
+        if (entry == null) return false;
+
+        long key = cellKey(entry.x >> CELL_SHIFT, entry.z >> CELL_SHIFT);
+        List<Entry<T>> cell = this.cells.get(key);
+
+        // Swap the last entry of the cell into the removed slot to avoid shifting the list
+        Entry<T> last = cell.remove(cell.size() - 1);
+        if (last != entry) {
+            cell.set(entry.slot, last);
+            last.slot = entry.slot;
+        }
+        if (cell.isEmpty()) this.cells.remove(key);
+        return true;
+    }
+
+    public boolean contains(T value) {
+        return this.entries.containsKey(value);
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public void clear() {
+        this.cells.clear();
+        this.entries.clear();
+    }
+
+    /**
+     * Visits every value whose x and z coordinates are within a square of half-side
+     * {@code radius} around (x, z) and whose depth is between minDepth and maxDepth
+     * (inclusive). The visitor is responsible for any exact distance check.
+     *
+     * @param radius The half-side of the square to search, or a negative number to visit every cell
+     */
+    public void forEachNear(int x, int z, int radius, int minDepth, int maxDepth, Visitor<T> visitor) {
+        if (radius < 0) {
+            for (List<Entry<T>> cell : this.cells.values()) {
+                visitCell(cell, minDepth, maxDepth, visitor);
+            }
+            return;
+        }
+
+        int minCellX = (int) ((long) x - radius >> CELL_SHIFT);
+        int maxCellX = (int) ((long) x + radius >> CELL_SHIFT);
+        int minCellZ = (int) ((long) z - radius >> CELL_SHIFT);
+        int maxCellZ = (int) ((long) z + radius >> CELL_SHIFT);
+
+        // Walking the populated cells is cheaper than probing a huge mostly-empty square
+        long probes = ((long) maxCellX - minCellX + 1) * ((long) maxCellZ - minCellZ + 1);
+        if (probes > this.cells.size()) {
+            for (Long2ObjectMap.Entry<List<Entry<T>>> cell : this.cells.long2ObjectEntrySet()) {
+                int cellX = (int) (cell.getLongKey() >> 32);
+                int cellZ = (int) cell.getLongKey();
+                if (cellX >= minCellX && cellX <= maxCellX && cellZ >= minCellZ && cellZ <= maxCellZ) {
+                    visitCell(cell.getValue(), minDepth, maxDepth, visitor);
+                }
+            }
+            return;
+        }
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                List<Entry<T>> cell = this.cells.get(cellKey(cellX, cellZ));
+                if (cell != null) visitCell(cell, minDepth, maxDepth, visitor);
+            }
+        }
+    }
+
+    private static <T> void visitCell(List<Entry<T>> cell, int minDepth, int maxDepth, Visitor<T> visitor) {
+        for (Entry<T> entry : cell) {
+            if (entry.depth >= minDepth && entry.depth <= maxDepth) {
+                visitor.visit(entry.value, entry.x, entry.z, entry.depth);
+            }
+        }
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return (long) cellX << 32 | cellZ & 0xFFFFFFFFL;
+    }
+
+    @FunctionalInterface
+    public interface Visitor<T> {
+        void visit(T value, int x, int z, int depth);
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final int x;
+        final int z;
+        final int depth;
+        int slot;
+
+        Entry(T value, int x, int z, int depth) {
+            this.value = value;
+            this.x = x;
+            this.z = z;
+            this.depth = depth;
+        }
+    }
+}
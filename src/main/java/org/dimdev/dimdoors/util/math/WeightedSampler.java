@@ -0,0 +1,133 @@
+package org.dimdev.dimdoors.util.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An immutable weighted distribution that can be sampled in constant time, built with
+ * Vose's alias method. Building the table is linear in the number of values, so a sampler
+ * should be built once and kept for as long as its weights stay the same.
+ *
+ * @param <T> The type of the values. Null values are allowed.
+ */
+public final class WeightedSampler<T> {
+    private static final WeightedSampler<?> EMPTY = new WeightedSampler<>(new ArrayList<>(), new float[0], new int[0], 0);
+
+    private final List<T> values;
+    private final float[] probabilities; // Probability of keeping column i rather than taking its alias
+    private final int[] aliases;
+    private final double totalWeight;
+
+    private WeightedSampler(List<T> values, float[] probabilities, int[] aliases, double totalWeight) {
+        this.values = values;
+        this.probabilities = probabilities;
+        this.aliases = aliases;
+        this.totalWeight = totalWeight;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> WeightedSampler<T> empty() {
+        return (WeightedSampler<T>) EMPTY;
+    }
+
+    /**
+     * Builds a sampler from a map of values to weights. Values with a weight that is
+     * not positive are never sampled.
+     */
+    public static <T> WeightedSampler<T> of(Map<T, Float> weights) {
+        Builder<T> builder = builder();
+        for (Map.Entry<T, Float> entry : weights.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @return A random value chosen according to the weights, or null if the sampler is empty
+     */
+    public T sample(Random random) {
+        int size = this.values.size();
+        if (size == 0) return null;
+        int column = random.nextInt(size);
+        return random.nextFloat() < this.probabilities[column] ? this.values.get(column) : this.values.get(this.aliases[column]);
+    }
+
+    public boolean isEmpty() {
+        return this.values.isEmpty();
+    }
+
+    public int size() {
+        return this.values.size();
+    }
+
+    public double getTotalWeight() {
+        return this.totalWeight;
+    }
+
+    public static final class Builder<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<Double> weights = new ArrayList<>();
+        private double totalWeight;
+
+        private Builder() {
+        }
+
+        public Builder<T> add(T value, double weight) {
+            if (weight > 0 && !Double.isInfinite(weight)) {
+                this.values.add(value);
+                this.weights.add(weight);
+                this.totalWeight += weight;
+            }
+            return this;
+        }
+
+        public WeightedSampler<T> build() {
+            int size = this.values.size();
+            if (size == 0) return empty();
+
+            float[] probabilities = new float[size];
+            int[] aliases = new int[size];
+
+            // Scale the weights so that the average is 1, then pair every column that is below
+            // average with one above average that tops it up.
+            double[] scaled = new double[size];
+            int[] small = new int[size];
+            int[] large = new int[size];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < size; i++) {
+                scaled[i] = this.weights.get(i) * size / this.totalWeight;
+                if (scaled[i] < 1) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                probabilities[less] = (float) scaled[less];
+                aliases[less] = more;
+                scaled[more] = scaled[more] + scaled[less] - 1;
+                if (scaled[more] < 1) {
+                    small[smallCount++] = more;
+                } else {
+                    large[largeCount++] = more;
+                }
+            }
+
+            // Whatever is left over is within rounding error of 1
+            while (largeCount > 0) probabilities[large[--largeCount]] = 1;
+            while (smallCount > 0) probabilities[small[--smallCount]] = 1;
+
+            return new WeightedSampler<>(new ArrayList<>(this.values), probabilities, aliases, this.totalWeight);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.dimdev.dimdoors.util.schematic;
+
+import java.util.Arrays;
+
+/**
+ * The palette indices of the blocks of a schematic, packed into a flat array of longs with as
+ * few bits per block as the palette needs, like vanilla's PackedIntegerArray. Entries don't
+ * span two longs. Blocks are stored in the order of the schematic format, x first, then z,
+ * then y, so that iterating over a box row by row reads the longs in order.
+ */
+public final class PackedBlockData {
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private int bits;
+    private int entriesPerLong;
+    private long mask;
+    private long[] data;
+
+    public interface Visitor {
+        void visit(int x, int y, int z, int index);
+    }
+
+    /**
+     * @param paletteSize The number of palette entries the data has to hold, more bits are
+     *                    used if a larger index is set later
+     */
+    public PackedBlockData(int sizeX, int sizeY, int sizeZ, int paletteSize) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.setBits(getBits(paletteSize));
+        this.data = new long[getLength(sizeX * sizeY * sizeZ, this.entriesPerLong)];
+    }
+
+    /**
+     * Reads block data saved as one varint per block, in the schematic order. The bytes are
+     * decoded twice, once to find how many bits the largest index needs and once to store them.
+     */
+    public static PackedBlockData fromBytes(int sizeX, int sizeY, int sizeZ, byte[] bytes) {
+        int size = sizeX * sizeY * sizeZ;
+        int[] maxIndex = {0};
+        readVarInts(bytes, size, (i, index) -> maxIndex[0] = Math.max(maxIndex[0], index));
+
+        PackedBlockData blockData = new PackedBlockData(sizeX, sizeY, sizeZ, maxIndex[0] + 1);
+        readVarInts(bytes, size, blockData::setEntry);
+        return blockData;
+    }
+
+    private interface EntryConsumer {
+        void accept(int i, int index);
+    }
+
+    private static void readVarInts(byte[] bytes, int count, EntryConsumer consumer) {
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (offset >= bytes.length) {
+                    throw new IllegalArgumentException("Block data ends after " + i + " of " + count + " blocks");
+                }
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            consumer.accept(i, value);
+        }
+    }
+
+    /**
+     * @return The block data as one varint per block, in the schematic order
+     */
+    public byte[] toBytes() {
+        int size = this.sizeX * this.sizeY * this.sizeZ;
+        byte[] bytes = new byte[size * ((this.bits + 6) / 7)]; // Enough for the largest index
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            int value = this.getEntry(i);
+            while ((value & ~0x7F) != 0) {
+                bytes[offset++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[offset++] = (byte) value;
+        }
+        return Arrays.copyOf(bytes, offset);
+    }
+
+    private static int getBits(int paletteSize) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+    }
+
+    private static int getLength(int size, int entriesPerLong) {
+        return (size + entriesPerLong - 1) / entriesPerLong;
+    }
+
+    private void setBits(int bits) {
+        this.bits = bits;
+        this.entriesPerLong = 64 / bits;
+        this.mask = (1L << bits) - 1;
+    }
+
+    private int getIndex(int x, int y, int z) {
+        return x + z * this.sizeX + y * this.sizeX * this.sizeZ;
+    }
+
+    public int get(int x, int y, int z) {
+        return this.getEntry(this.getIndex(x, y, z));
+    }
+
+    public void set(int x, int y, int z, int index) {
+        if (index > this.mask) this.resize(getBits(index + 1));
+        this.setEntry(this.getIndex(x, y, z), index);
+    }
+
+    private int getEntry(int i) {
+        int shift = i % this.entriesPerLong * this.bits;
+        return (int) (this.data[i / this.entriesPerLong] >>> shift & this.mask);
+    }
+
+    private void setEntry(int i, int index) {
+        int shift = i % this.entriesPerLong * this.bits;
+        int cell = i / this.entriesPerLong;
+        this.data[cell] = this.data[cell] & ~(this.mask << shift) | (index & this.mask) << shift;
+    }
+
+    private void resize(int bits) {
+        int size = this.sizeX * this.sizeY * this.sizeZ;
+        int[] entries = new int[size];
+        for (int i = 0; i < size; i++) entries[i] = this.getEntry(i);
+        this.setBits(bits);
+        this.data = new long[getLength(size, this.entriesPerLong)];
+        for (int i = 0; i < size; i++) this.setEntry(i, entries[i]);
+    }
+
+    /**
+     * Visits the blocks in a box, from the min to the max corner inclusive, in the order they
+     * are stored. The box is clamped to the size of the data. A chunk section is visited with
+     * a box of 16 blocks on each side.
+     */
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Visitor visitor) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, this.sizeX - 1);
+        maxY = Math.min(maxY, this.sizeY - 1);
+        maxZ = Math.min(maxZ, this.sizeZ - 1);
+
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                int i = this.getIndex(minX, y, z);
+                int cell = i / this.entriesPerLong;
+                int shift = i % this.entriesPerLong * this.bits;
+                long value = this.data[cell] >>> shift;
+                for (int x = minX; x <= maxX; x++) {
+                    if (shift + this.bits > 64) { // Continue with the next long
+                        value = this.data[++cell];
+                        shift = 0;
+                    }
+                    visitor.visit(x, y, z, (int) (value & this.mask));
+                    value >>>= this.bits;
+                    shift += this.bits;
+                }
+            }
+        }
+    }
+
+    public void forEach(Visitor visitor) {
+        this.forEachInBox(0, 0, 0, this.sizeX - 1, this.sizeY - 1, this.sizeZ - 1, visitor);
+    }
+
+    public int getSizeX() {
+        return this.sizeX;
+    }
+
+    public int getSizeY() {
+        return this.sizeY;
+    }
+
+    public int getSizeZ() {
+        return this.sizeZ;
+    }
+}
@@ -1,6 +1,7 @@
 package org.dimdev.dimdoors.util.schematic;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -30,6 +31,8 @@ import net.minecraft.state.property.Property;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
 import net.minecraft.util.math.Vec3i;
 import net.minecraft.util.registry.Registry;
 import net.minecraft.world.BlockView;
@@ -42,6 +45,7 @@ import net.minecraft.world.chunk.ChunkSection;
 
 public class Schematic implements BlockView {
     private static final Logger LOGGER = LogManager.getLogger();
+    private static final Set<Heightmap.Type> HEIGHTMAPS = EnumSet.of(Heightmap.Type.MOTION_BLOCKING, Heightmap.Type.MOTION_BLOCKING_NO_LEAVES, Heightmap.Type.OCEAN_FLOOR, Heightmap.Type.WORLD_SURFACE);
     public int version = 1;
     public String author = null;
     public String name = null;
@@ -53,7 +57,7 @@ public class Schematic implements BlockView {
     public int[] offset = {0, 0, 0};
     public int paletteMax;
     public List<BlockState> palette = new ArrayList<>();
-    public short[][][] blockData;
+    public PackedBlockData blockData;
     public List<CompoundTag> tileEntities = new ArrayList<>();
     public List<CompoundTag> entities = new ArrayList<>();
 
@@ -66,7 +70,7 @@ public class Schematic implements BlockView {
         this.sizeX = width;
         this.sizeY = height;
         this.sizeZ = length;
-        this.blockData = new short[width][height][length];
+        this.blockData = new PackedBlockData(width, height, length, 1);
         this.palette.add(Blocks.AIR.getDefaultState());
         this.paletteMax++;
         this.creationDate = System.currentTimeMillis();
@@ -161,15 +165,8 @@ public class Schematic implements BlockView {
             schematic.paletteMax = schematic.palette.size() - 1;
         }
 
-        byte[] blockDataIntArray = tag.getByteArray("BlockData");
-        schematic.blockData = new short[schematic.sizeX][schematic.sizeY][schematic.sizeZ];
-        for (int x = 0; x < schematic.sizeX; x++) {
-            for (int y = 0; y < schematic.sizeY; y++) {
-                for (int z = 0; z < schematic.sizeZ; z++) {
-                    schematic.blockData[x][y][z] = blockDataIntArray[x + z * schematic.sizeX + y * schematic.sizeX * schematic.sizeZ]; //according to the documentation on https://github.com/SpongePowered/Schematic-Specification/blob/master/versions/schematic-1.md
-                }
-            }
-        }
+        //according to the documentation on https://github.com/SpongePowered/Schematic-Specification/blob/master/versions/schematic-1.md
+        schematic.blockData = PackedBlockData.fromBytes(schematic.sizeX, schematic.sizeY, schematic.sizeZ, tag.getByteArray("BlockData"));
 
         if (tag.contains("TileEntities")) {
             for (Tag tag1 : (ListTag) tag.get("TileEntities")) {
@@ -225,17 +222,7 @@ public class Schematic implements BlockView {
 
         nbt.put("Palette", paletteNBT);
 
-        byte[] blockDataIntArray = new byte[this.sizeX * this.sizeY * this.sizeZ];
-
-        for (int x = 0; x < this.sizeX; x++) {
-            for (int y = 0; y < this.sizeY; y++) {
-                for (int z = 0; z < this.sizeZ; z++) {
-                    blockDataIntArray[x + z * this.sizeX + y * this.sizeX * this.sizeZ] = (byte) this.blockData[x][y][z]; //according to the documentation on https://github.com/SpongePowered/Schematic-Specification/blob/master/versions/schematic-1.md
-                }
-            }
-        }
-
-        nbt.putByteArray("BlockData", blockDataIntArray);
+        nbt.putByteArray("BlockData", this.blockData.toBytes()); //according to the documentation on https://github.com/SpongePowered/Schematic-Specification/blob/master/versions/schematic-1.md
 
         ListTag tileEntitiesTagList = new ListTag();
         tileEntitiesTagList.addAll(this.tileEntities);
@@ -410,90 +397,98 @@ public class Schematic implements BlockView {
             return Blocks.AIR.getDefaultState();
         }
 
-        return this.palette.get(this.blockData[x][y][z]);
+        return this.palette.get(this.blockData.get(x, y, z));
     }
 
     public void setBlockState(int x, int y, int z, BlockState state) {
         if (this.palette.contains(state)) {
-            this.blockData[x][y][z] = (short) this.palette.indexOf(state); // TODO: optimize this (there must be some efficient list implementations)
+            this.blockData.set(x, y, z, this.palette.indexOf(state)); // TODO: optimize this (there must be some efficient list implementations)
         } else {
             this.palette.add(state);
-            this.blockData[x][y][z] = (short) ++this.paletteMax;
+            this.blockData.set(x, y, z, ++this.paletteMax);
         }
     }
 
+    /**
+     * Writes the blocks directly into the chunk sections. The heightmaps of a chunk are
+     * recomputed once after all of its sections were written, and the lighting provider is
+     * told once per section whether it is empty. Light is only checked where it can change:
+     * where a light source was replaced, where a light source that isn't enclosed by opaque
+     * blocks was placed, and where a block was replaced in a section that existed before.
+     * Changed blocks are marked for update, which vanilla sends as one delta packet per section.
+     * The block data of each section is read in the order it is stored, rather than looked up
+     * block by block.
+     */
     private void setBlocks(WorldAccess world, int originX, int originY, int originZ) {
         LOGGER.debug("Setting chunk blockstates");
-        long setTime = 0;
-        long relightTime = 0;
+        long setStart = System.nanoTime();
+        int[] lightChecks = {0};
+
+        ServerWorld serverWorld = world instanceof ServerWorldAccess ? ((ServerWorldAccess) world).toServerWorld() : (ServerWorld) world;
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        BlockPos.Mutable schematicPos = new BlockPos.Mutable();
 
         for (int cx = 0; cx <= (this.sizeX >> 4) + 1; cx++) {
             for (int cz = 0; cz <= (this.sizeZ >> 4) + 1; cz++) {
-                long setStart = System.nanoTime();
-                Chunk chunk = world.getChunk((originX >> 4) + cx, (originZ >> 4) + cz);
+                int chunkX = (originX >> 4) + cx;
+                int chunkZ = (originZ >> 4) + cz;
+                Chunk chunk = world.getChunk(chunkX, chunkZ);
                 ChunkSection[] sections = chunk.getSectionArray();
+                boolean chunkChanged = false;
 
                 for (int cy = 0; cy <= (this.sizeY >> 4) + 1; cy++) {
-                    ChunkSection section = sections[(originY >> 4) + cy];
-
-                    boolean setAir = true;
-                    if (section == null) {
-                        section = new ChunkSection((originY >> 4) + cy << 4);
-                        sections[(originY >> 4) + cy] = section;
-                        setAir = false;
-                    }
-
-                    for (int lx = 0; lx < 16; lx++) {
-                        for (int ly = 0; ly < 16; ly++) {
-                            for (int lz = 0; lz < 16; lz++) {
-                                int x = (cx << 4) + lx - (originX & 0x0F);
-                                int y = (cy << 4) + ly - (originY & 0x0F);
-                                int z = (cz << 4) + lz - (originZ & 0x0F);
-
-                                if (x >= 0 && y >= 0 && z >= 0 && x < this.sizeX && y < this.sizeY && z < this.sizeZ) {
-                                    BlockState state = this.palette.get(this.blockData[x][y][z]);
-                                    if (setAir || !state.getBlock().equals(Blocks.AIR)) {
-                                        section.setBlockState(lx, ly, lz, state);
-
-//                                        BlockPos pos = new BlockPos(originX + x, originY + y, originZ + z);
-//                                        serverWorld.getChunkManager().markForUpdate(pos);
-//                                        serverWorld.getLightingProvider().checkBlock(pos);
-                                        if (y > 255) {
-                                            System.out.println();
-                                        }
-
-                                        chunk.getHeightmap(Heightmap.Type.MOTION_BLOCKING).trackUpdate(lx, y, lz, state);
-                                        chunk.getHeightmap(Heightmap.Type.MOTION_BLOCKING_NO_LEAVES).trackUpdate(lx, y, lz, state);
-                                        chunk.getHeightmap(Heightmap.Type.OCEAN_FLOOR).trackUpdate(lx, y, lz, state);
-                                        chunk.getHeightmap(Heightmap.Type.WORLD_SURFACE).trackUpdate(lx, y, lz, state);
-
-                                        ServerWorld w;
-
-                                        if (world instanceof ServerWorldAccess) {
-                                            w = ((ServerWorldAccess) world).toServerWorld();
-                                        } else {
-                                            w = (ServerWorld) world;
-                                        }
-
-                                        w.getChunkManager().markForUpdate(new BlockPos(originX + x, originY + y, originZ + z));
-                                        w.getLightingProvider().checkBlock(new BlockPos(originX + x, originY + y, originZ + z));
-                                    }
-                                }
-                            }
+                    int sectionY = (originY >> 4) + cy;
+                    ChunkSection existingSection = sections[sectionY];
+                    boolean setAir = existingSection != null;
+                    ChunkSection section = setAir ? existingSection : new ChunkSection(sectionY << 4);
+                    if (!setAir) sections[sectionY] = section;
+                    boolean[] sectionChanged = {false};
+
+                    // The section's box in schematic coordinates, clamped to the schematic by forEachInBox
+                    int minX = (cx << 4) - (originX & 0x0F);
+                    int minY = (cy << 4) - (originY & 0x0F);
+                    int minZ = (cz << 4) - (originZ & 0x0F);
+                    this.blockData.forEachInBox(minX, minY, minZ, minX + 15, minY + 15, minZ + 15, (x, y, z, index) -> {
+                        BlockState state = this.palette.get(index);
+                        if (!setAir && state.getBlock().equals(Blocks.AIR)) return;
+                        BlockState oldState = section.setBlockState(x - minX, y - minY, z - minZ, state);
+                        if (oldState == state) return;
+                        sectionChanged[0] = true;
+
+                        pos.set(originX + x, originY + y, originZ + z);
+                        serverWorld.getChunkManager().markForUpdate(pos);
+                        if (oldState.getLuminance() > 0 || setAir || state.getLuminance() > 0 && this.isExposed(schematicPos, x, y, z)) {
+                            serverWorld.getLightingProvider().checkBlock(pos);
+                            lightChecks[0]++;
                         }
+                    });
+
+                    if (sectionChanged[0]) {
+                        serverWorld.getLightingProvider().setSectionStatus(ChunkSectionPos.from(chunkX, sectionY, chunkZ), section.isEmpty());
+                        chunkChanged = true;
                     }
                 }
 
-//                setTime += System.nanoTime() - setStart;
-//                long relightStart = System.nanoTime();
-//
-//                chunk.setLightOn(false);
-//                relightTime += System.nanoTime() - relightStart;
+                if (chunkChanged) {
+                    Heightmap.populateHeightmaps(chunk, HEIGHTMAPS);
+                    chunk.setShouldSave(true);
+                }
             }
         }
 
-        // TODO: update region
-        LOGGER.debug("Set block states in " + setTime / 1000000 + " ms and relit chunks/cubes in " + relightTime / 1000000);
+        LOGGER.debug("Set block states in " + (System.nanoTime() - setStart) / 1000000 + " ms with " + lightChecks[0] + " light checks");
+    }
+
+    /**
+     * @return Whether a block isn't surrounded by opaque blocks in this schematic, so that
+     * light it emits can spread. Blocks at the border of the schematic are always exposed.
+     */
+    private boolean isExposed(BlockPos.Mutable pos, int x, int y, int z) {
+        for (Direction direction : Direction.values()) {
+            pos.set(x + direction.getOffsetX(), y + direction.getOffsetY(), z + direction.getOffsetZ());
+            if (!this.getBlockState(pos).isOpaqueFullCube(this, pos)) return true;
+        }
+        return false;
     }
 
     @Override
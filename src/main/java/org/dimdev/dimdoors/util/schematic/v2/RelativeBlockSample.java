@@ -8,6 +8,7 @@ import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
+import org.dimdev.dimdoors.util.schematic.PackedBlockData;
 import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.block.Block;
@@ -24,11 +25,17 @@ import net.minecraft.world.BlockView;
 import net.minecraft.world.ModifiableWorld;
 import net.minecraft.world.StructureWorldAccess;
 
+/**
+ * The blocks of a v2 schematic, relative to its origin. Blocks are read from the packed block
+ * data and the palette, and only blocks overwritten through {@link #setBlockState} are kept
+ * in a map, so a sample doesn't allocate anything per block of the schematic.
+ */
 public class RelativeBlockSample implements BlockView, ModifiableWorld {
     public final Schematic schematic;
-    private final int[][][] blockData;
+    private final PackedBlockData blockData;
     private final BiMap<BlockState, Integer> blockPalette;
-    private final Map<BlockPos, BlockState> blockContainer;
+    private final BlockState[] paletteStates; // Palette index -> block state
+    private final Map<BlockPos, BlockState> overwrittenBlocks;
     private final Map<BlockPos, CompoundTag> blockEntityContainer;
     private StructureWorldAccess world;
 
@@ -36,19 +43,12 @@ public class RelativeBlockSample implements BlockView, ModifiableWorld {
         this.schematic = schematic;
         this.blockData = SchematicPlacer.getBlockData(schematic);
         this.blockPalette = ImmutableBiMap.copyOf(schematic.getBlockPalette());
-        this.blockContainer = Maps.newHashMap();
-        this.blockEntityContainer = Maps.newHashMap();
-        int width = schematic.getWidth();
-        int height = schematic.getHeight();
-        int length = schematic.getLength();
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                for (int z = 0; z < length; z++) {
-                    this.setBlockState(new BlockPos(x, y, z), this.blockPalette.inverse().get(this.blockData[x][y][z]), 2);
-                    this.blockContainer.put(new BlockPos(x, y, z), this.blockPalette.inverse().get(this.blockData[x][y][z]));
-                }
-            }
+        this.paletteStates = new BlockState[this.blockPalette.values().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1];
+        for (Map.Entry<BlockState, Integer> entry : this.blockPalette.entrySet()) {
+            this.paletteStates[entry.getValue()] = entry.getKey();
         }
+        this.overwrittenBlocks = Maps.newHashMap();
+        this.blockEntityContainer = Maps.newHashMap();
         for (CompoundTag blockEntityTag : schematic.getBlockEntities()) {
             if (blockEntityTag.contains("Pos") && (!blockEntityTag.contains("x") && !blockEntityTag.contains("y") && !blockEntityTag.contains("z"))) {
                 IntArrayTag pos = Objects.requireNonNull((IntArrayTag) blockEntityTag.get("Pos"));
@@ -82,21 +82,63 @@ public class RelativeBlockSample implements BlockView, ModifiableWorld {
         return null;
     }
 
+    /**
+     * @return The block at a position relative to the origin, air outside of the schematic
+     */
     @Override
     public BlockState getBlockState(BlockPos pos) {
-        return this.blockContainer.get(pos);
+        if (!this.overwrittenBlocks.isEmpty()) {
+            BlockState state = this.overwrittenBlocks.get(pos);
+            if (state != null) return state;
+        }
+        int x = pos.getX();
+        int y = pos.getY();
+        int z = pos.getZ();
+        if (x < 0 || y < 0 || z < 0 || x >= this.blockData.getSizeX() || y >= this.blockData.getSizeY() || z >= this.blockData.getSizeZ()) {
+            return Blocks.AIR.getDefaultState();
+        }
+        return this.getPaletteState(this.blockData.get(x, y, z));
+    }
+
+    private BlockState getPaletteState(int index) {
+        BlockState state = index < this.paletteStates.length ? this.paletteStates[index] : null;
+        if (state == null) throw new IllegalStateException("Schematic \"" + this.schematic.getMetadata().getName() + "\" has no palette entry " + index);
+        return state;
     }
 
     @Override
     public FluidState getFluidState(BlockPos pos) {
-        return this.blockContainer.get(pos).getFluidState();
+        return this.getBlockState(pos).getFluidState();
     }
 
+    /**
+     * Places the blocks one chunk section of the world at a time, reading the block data of
+     * each section in the order it is stored. Overwritten blocks are placed instead of the
+     * schematic's blocks at their position.
+     */
     public void place(BlockPos origin) {
         if (this.world == null) {
             throw new UnsupportedOperationException("Can not place in a null world!");
         }
-        this.blockContainer.forEach((pos, state) -> this.world.setBlockState(origin.add(pos), state, 0b0000011));
+        BlockPos.Mutable worldPos = new BlockPos.Mutable();
+        BlockPos.Mutable relativePos = new BlockPos.Mutable();
+        boolean overwritten = !this.overwrittenBlocks.isEmpty();
+        // The schematic coordinates of the first section's min corner, so that sections line up with the world's
+        int startX = -(origin.getX() & 0x0F);
+        int startY = -(origin.getY() & 0x0F);
+        int startZ = -(origin.getZ() & 0x0F);
+        for (int minX = startX; minX < this.blockData.getSizeX(); minX += 16) {
+            for (int minZ = startZ; minZ < this.blockData.getSizeZ(); minZ += 16) {
+                for (int minY = startY; minY < this.blockData.getSizeY(); minY += 16) {
+                    this.blockData.forEachInBox(minX, minY, minZ, minX + 15, minY + 15, minZ + 15, (x, y, z, index) -> {
+                        if (overwritten && this.overwrittenBlocks.containsKey(relativePos.set(x, y, z))) return;
+                        worldPos.set(origin.getX() + x, origin.getY() + y, origin.getZ() + z);
+                        this.world.setBlockState(worldPos, this.getPaletteState(index), 0b0000011);
+                    });
+                }
+            }
+        }
+        this.overwrittenBlocks.forEach((relative, state) -> this.world.setBlockState(origin.add(relative), state, 0b0000011));
         for (Map.Entry<BlockPos, CompoundTag> entry : this.blockEntityContainer.entrySet()) {
             BlockPos pos = entry.getKey();
             BlockPos actualPos = origin.add(pos);
@@ -111,7 +153,7 @@ public class RelativeBlockSample implements BlockView, ModifiableWorld {
         }
     }
 
-    public int[][][] getBlockData() {
+    public PackedBlockData getBlockData() {
         return this.blockData;
     }
 
@@ -119,8 +161,11 @@ public class RelativeBlockSample implements BlockView, ModifiableWorld {
         return this.blockPalette;
     }
 
-    public Map<BlockPos, BlockState> getBlockContainer() {
-        return this.blockContainer;
+    /**
+     * @return The blocks set through {@link #setBlockState}, by position relative to the origin
+     */
+    public Map<BlockPos, BlockState> getOverwrittenBlocks() {
+        return this.overwrittenBlocks;
     }
 
     public Map<BlockPos, CompoundTag> getBlockEntityContainer() {
@@ -138,7 +183,7 @@ public class RelativeBlockSample implements BlockView, ModifiableWorld {
 
     @Override
     public boolean setBlockState(BlockPos pos, BlockState state, int flags, int maxUpdateDepth) {
-        this.blockContainer.put(pos, state);
+        this.overwrittenBlocks.put(pos.toImmutable(), state);
         return true;
     }
 
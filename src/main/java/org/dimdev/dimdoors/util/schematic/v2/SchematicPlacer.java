@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.dimdev.dimdoors.mixin.ListTagAccessor;
+import org.dimdev.dimdoors.util.schematic.PackedBlockData;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
@@ -35,20 +36,8 @@ public final class SchematicPlacer {
         blockSample.place(origin);
     }
 
-    public static int[][][] getBlockData(Schematic schematic) {
-        int width = schematic.getWidth();
-        int height = schematic.getHeight();
-        int length = schematic.getLength();
-        byte[] blockDataIntArray = schematic.getBlockData().array();
-        int[][][] blockData = new int[width][height][length];
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                for (int z = 0; z < length; z++) {
-                    blockData[x][y][z] = blockDataIntArray[x + z * width + y * width * length];
-                }
-            }
-        }
-        return blockData;
+    public static PackedBlockData getBlockData(Schematic schematic) {
+        return PackedBlockData.fromBytes(schematic.getWidth(), schematic.getHeight(), schematic.getLength(), schematic.getBlockData().array());
     }
 
     private static void placeEntities(int originX, int originY, int originZ, Schematic schematic, StructureWorldAccess world) {
@@ -8,13 +8,18 @@ import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import org.dimdev.dimdoors.DimensionalDoorsInitializer;
 import org.dimdev.dimdoors.pockets.TemplateUtils;
+import org.dimdev.dimdoors.rift.registry.RiftRegistry;
+import org.dimdev.dimdoors.util.Location;
 import org.dimdev.dimdoors.util.schematic.v2.Schematic;
 import org.dimdev.dimdoors.util.schematic.v2.SchematicPlacer;
 import org.dimdev.dimdoors.world.feature.gateway.Gateway;
 
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtIo;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.StructureWorldAccess;
+import net.minecraft.world.World;
 
 public abstract class SchematicV2Gateway implements Gateway {
     private Schematic schematic;
@@ -51,6 +56,14 @@ public abstract class SchematicV2Gateway implements Gateway {
         }
         SchematicPlacer.place(this.schematic, world, pos);
         this.generateRandomBits(world, pos);
+
+        // This runs on a world generation thread, so the rifts are registered later by the server thread
+        RegistryKey<World> worldKey = world.toServerWorld().getRegistryKey();
+        for (CompoundTag blockEntityTag : this.schematic.getBlockEntities()) {
+            int[] blockEntityPos = blockEntityTag.getIntArray("Pos"); // Relative to the origin, added when the schematic was placed
+            if (blockEntityPos.length < 3) continue;
+            RiftRegistry.queueRegistration(new Location(worldKey, pos.add(blockEntityPos[0], blockEntityPos[1], blockEntityPos[2])));
+        }
     }
 
     /**
@@ -1,8 +1,11 @@
 package org.dimdev.dimdoors.world.pocket;
 
+import java.util.Objects;
+
 import com.flowpowered.math.vector.Vector3i;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import org.dimdev.dimdoors.rift.registry.RiftRegistry;
 import org.dimdev.dimdoors.util.Codecs;
 import org.dimdev.dimdoors.util.EntityUtils;
 
@@ -23,27 +26,33 @@ public final class Pocket {
                 VirtualLocation.CODEC.fieldOf("virtualLocation").forGetter(a -> a.virtualLocation),
                 PocketColor.CODEC.fieldOf("dyeColor").forGetter(a -> a.dyeColor),
                 PocketColor.CODEC.optionalFieldOf("nextDyeColor", PocketColor.NONE).forGetter(a -> a.nextDyeColor),
-                Codec.INT.fieldOf("count").forGetter(a -> a.count)
+                Codec.INT.fieldOf("count").forGetter(a -> a.count),
+                Codec.BOOL.optionalFieldOf("alwaysTick", false).forGetter(a -> a.alwaysTick),
+                Codec.INT.optionalFieldOf("repaintProgress", -1).forGetter(a -> a.repaintProgress)
         ).apply(instance, Pocket::new);
     });
     private static final int BLOCKS_PAINTED_PER_DYE = 1106;
 
     public final int id;
     public BlockBox box;
-    public VirtualLocation virtualLocation;
+    private VirtualLocation virtualLocation;
     public PocketColor dyeColor = PocketColor.WHITE;
     public PocketColor nextDyeColor = PocketColor.NONE;
     public int count = 0;
+    public boolean alwaysTick = false; // Keeps ticking while its owner is offline
+    int repaintProgress = -1; // Index of the next chunk section to repaint, -1 if the walls have the pocket's color
 
     public RegistryKey<World> world;
 
-    private Pocket(int id, BlockBox box, VirtualLocation virtualLocation, PocketColor dyeColor, PocketColor nextDyeColor, int count) {
+    private Pocket(int id, BlockBox box, VirtualLocation virtualLocation, PocketColor dyeColor, PocketColor nextDyeColor, int count, boolean alwaysTick, int repaintProgress) {
         this.id = id;
         this.box = box;
         this.virtualLocation = virtualLocation;
         this.dyeColor = dyeColor;
         this.nextDyeColor = nextDyeColor;
         this.count = count;
+        this.alwaysTick = alwaysTick;
+        this.repaintProgress = repaintProgress;
     }
 
     public Pocket(int id, RegistryKey<World> world, int x, int z) {
@@ -56,6 +65,20 @@ public final class Pocket {
         return this.box.contains(pos);
     }
 
+    public VirtualLocation getVirtualLocation() {
+        return this.virtualLocation;
+    }
+
+    /**
+     * Sets the virtual location of this pocket. The rifts in it cache their virtual
+     * location, so they are told to recompute it.
+     */
+    public void setVirtualLocation(VirtualLocation virtualLocation) {
+        if (Objects.equals(this.virtualLocation, virtualLocation)) return;
+        this.virtualLocation = virtualLocation;
+        RiftRegistry.instance().pocketVirtualLocationChanged(this);
+    }
+
     public BlockPos getOrigin() {
         return new BlockPos(this.box.minX, this.box.minY, this.box.minZ);
     }
@@ -75,6 +98,7 @@ public final class Pocket {
                 this.dyeColor = color;
                 this.nextDyeColor = PocketColor.NONE;
                 this.count = 0;
+                PocketRegistry.getInstance(this.world).repaint(this);
                 EntityUtils.chat(entity, new TranslatableText("dimdoors.pocket.pocketHasBeenDyed", dyeColor));
             } else {
                 this.count++;
@@ -88,32 +112,6 @@ public final class Pocket {
         return true;
     }
 
-//    private void repaint(DyeColor dyeColor) {
-//        BlockPos origin = getOrigin();
-//        World world = WorldUtils.getWorld(dim);
-//        BlockState innerWall = ModBlocks.getDefaultState()..withProperty(..., dyeColor); // <-- forgot the exact name of the color property
-//        BlockState outerWall = ModBlocks.ETERNAL_FABRIC.getDefaultState().withProperty(..., dyeColor);
-//
-//        for (int x = origin.getX(); x < origin.getX() + size; x++) {
-//            for (int y = origin.getY(); y < origin.getY() + size; y++) {
-//                for (int z = origin.getZ(); z < origin.getZ() + size; z++) {
-//                    int layer = Collections.min(Arrays.asList(x, y, z, size - 1 - x, size - 1 - y, size - 1 - z));
-//                    if (layer == 0) {
-//                        if (world.getBlockState(x, y, z).getBlock() == ModBlocks.ETERNAL_FABRIC) {
-//                            world.setBlockState(x, y, z, outerWall);
-//                        }
-//                    } else if (layer < 5) {
-//                        if (world.getBlockState(x, y, z).getBlock() == ModBlocks.FABRIC) {
-//                            world.setBlockState(x, y, z, innerWall);
-//                        }
-//                    }
-//                }
-//            }
-//        }
-//
-//        return schematic;
-//    }
-
     private static int amountOfDyeRequiredToColor(Pocket pocket) {
         int outerVolume = pocket.box.getBlockCountX() * pocket.box.getBlockCountY() * pocket.box.getBlockCountZ();
         int innerVolume = (pocket.box.getBlockCountX() - 5) * (pocket.box.getBlockCountY() - 5) * (pocket.box.getBlockCountZ() - 5);
@@ -122,7 +120,9 @@ public final class Pocket {
     }
 
     public void setSize(int x, int y, int z) {
+        BlockBox previousBox = this.box;
         this.box = new BlockBox(this.box.minX, this.box.minY, this.box.minZ, this.box.minX + x, this.box.minY + y, this.box.minZ + z);
+        PocketRegistry.getInstance(this.world).boxChanged(this, previousBox);
     }
 
     public Vector3i getSize() {
@@ -0,0 +1,254 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import org.dimdev.dimdoors.DimensionalDoorsInitializer;
+import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.util.Metrics;
+import org.dimdev.dimdoors.world.ModDimensions;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+/**
+ * Keeps the chunks of the pockets players are in loaded and ticking, and releases them as
+ * soon as the last player leaves, so that vanilla can unload them. Private pockets whose
+ * owner is offline and that nobody is in are frozen: their block entities and entities don't
+ * tick even if their chunks are kept loaded by a player in a nearby pocket or by a forced
+ * chunk, unless the pocket is set to always tick. This keeps the tick cost of the pocket
+ * worlds proportional to the players online rather than to the pockets there are.
+ *
+ * <p>The pocket each player is in is looked up by chunk, and pockets are only frozen or
+ * unfrozen when their owner logs in or out, a player enters or leaves them, or they are set
+ * to always tick. All private pockets are only visited when freezing is turned on.
+ */
+public class PocketChunkManager {
+    public static final ChunkTicketType<ChunkPos> POCKET_TICKET = ChunkTicketType.create("dimdoors_pocket", Comparator.comparingLong(ChunkPos::toLong));
+    private static final int TICKET_RADIUS = 2; // Keeps the ticketed chunks entity ticking
+    private static final List<RegistryKey<World>> WORLDS = Arrays.asList(ModDimensions.PERSONAL, ModDimensions.PUBLIC, ModDimensions.DUNGEON);
+    private static final Metrics.Timer UPDATE_TIME = Metrics.timer("pocket_chunk_manager.update");
+
+    // Read by the server thread while ticking chunks, only changed by this class
+    private static Long2IntMap frozenChunks = newChunkCounts(); // Packed ChunkPos -> number of frozen private pockets in it
+    private static Long2IntMap activePrivateChunks = newChunkCounts(); // Packed ChunkPos -> number of private pocket world pockets players are in
+
+    static {
+        Metrics.gauge("pocket_chunk_manager.frozen_chunks", () -> frozenChunks.size());
+    }
+
+    private final Map<RegistryKey<World>, Int2ObjectMap<LongList>> ticketedPockets = new HashMap<>(); // Pocket ID -> chunks it has tickets for
+    private final Int2ObjectMap<LongList> frozenPockets = new Int2ObjectOpenHashMap<>(); // Private pocket ID -> chunks it was frozen in
+    private boolean freezing; // Whether offline pockets were frozen since freezing was last turned on
+
+    public PocketChunkManager() {
+        for (RegistryKey<World> world : WORLDS) this.ticketedPockets.put(world, new Int2ObjectOpenHashMap<>());
+    }
+
+    private static Long2IntMap newChunkCounts() {
+        Long2IntMap counts = new Long2IntOpenHashMap();
+        counts.defaultReturnValue(0);
+        return counts;
+    }
+
+    /**
+     * @return Whether the block entities and entities in a chunk of the private pocket world
+     * shouldn't tick. A chunk is never frozen if a pocket that a player is in is in it.
+     */
+    public static boolean isFrozen(ServerWorld world, int chunkX, int chunkZ) {
+        if (frozenChunks.isEmpty() || world.getRegistryKey() != ModDimensions.PERSONAL) return false;
+        long chunk = ChunkPos.toLong(chunkX, chunkZ);
+        return frozenChunks.containsKey(chunk) && !activePrivateChunks.containsKey(chunk);
+    }
+
+    public void tick(MinecraftServer server) {
+        int interval = ModConfig.INSTANCE.getPocketsConfig().pocketHibernationInterval;
+        if (interval <= 0) {
+            if (this.freezing) this.unfreezeAll(); // Disabled while the server is running
+            return;
+        }
+        if (server.getTicks() % interval != 0) return;
+
+        long start = System.nanoTime();
+        if (ModConfig.INSTANCE.getPocketsConfig().freezeOfflinePockets != this.freezing) {
+            if (this.freezing) {
+                this.unfreezeAll();
+            } else {
+                this.freezeOfflinePockets(server);
+            }
+        }
+        for (RegistryKey<World> world : WORLDS) {
+            this.updateTickets(DimensionalDoorsInitializer.getWorld(world));
+        }
+        UPDATE_TIME.recordSince(start);
+    }
+
+    /**
+     * Adds tickets for the pockets that players are in and removes those of the pockets that
+     * were left or removed.
+     */
+    private void updateTickets(ServerWorld world) {
+        PocketRegistry registry = PocketRegistry.getInstance(world.getRegistryKey());
+        Int2ObjectMap<LongList> ticketedPockets = this.ticketedPockets.get(world.getRegistryKey());
+        boolean privatePockets = world.getRegistryKey() == ModDimensions.PERSONAL;
+
+        IntSet activePockets = new IntOpenHashSet();
+        for (ServerPlayerEntity player : world.getPlayers()) {
+            Pocket pocket = registry.findPocketContaining(player.getBlockPos());
+            if (pocket != null) activePockets.add(pocket.id);
+        }
+
+        for (ObjectIterator<Int2ObjectMap.Entry<LongList>> iterator = ticketedPockets.int2ObjectEntrySet().iterator(); iterator.hasNext(); ) {
+            Int2ObjectMap.Entry<LongList> entry = iterator.next();
+            if (activePockets.contains(entry.getIntKey())) continue;
+            for (long chunk : entry.getValue()) {
+                ChunkPos pos = new ChunkPos(chunk);
+                world.getChunkManager().removeTicket(POCKET_TICKET, pos, TICKET_RADIUS, pos);
+            }
+            iterator.remove();
+            if (privatePockets) {
+                removeChunks(activePrivateChunks, entry.getValue());
+                this.updateFrozen(registry.getPocket(entry.getIntKey()));
+            }
+        }
+
+        for (int id : activePockets) {
+            if (ticketedPockets.containsKey(id)) continue;
+            LongList chunks = getChunks(registry.getPocket(id).box);
+            for (long chunk : chunks) {
+                ChunkPos pos = new ChunkPos(chunk);
+                world.getChunkManager().addTicket(POCKET_TICKET, pos, TICKET_RADIUS, pos);
+            }
+            ticketedPockets.put(id, chunks);
+            if (privatePockets) {
+                addChunks(activePrivateChunks, chunks);
+                this.updateFrozen(registry.getPocket(id));
+            }
+        }
+    }
+
+    /**
+     * Freezes the private pockets of the players that are offline, when freezing is turned on.
+     */
+    private void freezeOfflinePockets(MinecraftServer server) {
+        this.freezing = true;
+        PocketRegistry registry = PocketRegistry.getInstance(ModDimensions.PERSONAL);
+        PrivatePocketData.instance().forEachPrivatePocket(ModDimensions.PERSONAL, (UUID owner, int id) -> {
+            this.setFrozen(registry.getPocket(id), server.getPlayerManager().getPlayer(owner) == null);
+        });
+    }
+
+    private void unfreezeAll() {
+        this.freezing = false;
+        this.frozenPockets.clear();
+        frozenChunks = newChunkCounts();
+    }
+
+    public void playerLoggedIn(ServerPlayerEntity player) {
+        this.ownerChanged(player.getUuid(), true);
+    }
+
+    /**
+     * Called before the player is removed, so they are still in the player list.
+     */
+    public void playerLoggedOut(ServerPlayerEntity player) {
+        this.ownerChanged(player.getUuid(), false);
+    }
+
+    private void ownerChanged(UUID owner, boolean online) {
+        if (!this.freezing) return;
+        Pocket pocket = PrivatePocketData.instance().getPrivatePocket(owner);
+        if (pocket != null && pocket.world == ModDimensions.PERSONAL) this.setFrozen(pocket, !online);
+    }
+
+    /**
+     * Freezes or unfreezes a private pocket after it was set to always tick or not.
+     */
+    public void pocketChanged(Pocket pocket) {
+        if (pocket.world == ModDimensions.PERSONAL) this.updateFrozen(pocket);
+    }
+
+    private void updateFrozen(Pocket pocket) {
+        if (!this.freezing || pocket == null) return;
+        UUID owner = PrivatePocketData.instance().getPrivatePocketOwner(pocket);
+        this.setFrozen(pocket, owner != null && DimensionalDoorsInitializer.getServer().getPlayerManager().getPlayer(owner) == null);
+    }
+
+    /**
+     * Freezes a private pocket if its owner is offline, unless a player is in it or it always ticks.
+     */
+    private void setFrozen(Pocket pocket, boolean ownerOffline) {
+        if (pocket == null) return;
+        boolean frozen = ownerOffline && !pocket.alwaysTick && !this.ticketedPockets.get(ModDimensions.PERSONAL).containsKey(pocket.id);
+        if (frozen == this.frozenPockets.containsKey(pocket.id)) return;
+        if (frozen) {
+            LongList chunks = getChunks(pocket.box);
+            this.frozenPockets.put(pocket.id, chunks);
+            addChunks(frozenChunks, chunks);
+        } else {
+            removeChunks(frozenChunks, this.frozenPockets.remove(pocket.id));
+        }
+    }
+
+    private static void addChunks(Long2IntMap counts, LongList chunks) {
+        for (long chunk : chunks) counts.put(chunk, counts.get(chunk) + 1);
+    }
+
+    private static void removeChunks(Long2IntMap counts, LongList chunks) {
+        for (long chunk : chunks) {
+            int count = counts.get(chunk) - 1;
+            if (count > 0) {
+                counts.put(chunk, count);
+            } else {
+                counts.remove(chunk);
+            }
+        }
+    }
+
+    /**
+     * Releases the tickets and unfreezes all chunks.
+     */
+    public void clear() {
+        for (RegistryKey<World> world : WORLDS) {
+            ServerWorld serverWorld = DimensionalDoorsInitializer.getWorld(world);
+            for (LongList chunks : this.ticketedPockets.get(world).values()) {
+                for (long chunk : chunks) {
+                    ChunkPos pos = new ChunkPos(chunk);
+                    serverWorld.getChunkManager().removeTicket(POCKET_TICKET, pos, TICKET_RADIUS, pos);
+                }
+            }
+            this.ticketedPockets.get(world).clear();
+        }
+        activePrivateChunks = newChunkCounts();
+        this.unfreezeAll();
+    }
+
+    private static LongList getChunks(BlockBox box) {
+        LongList chunks = new LongArrayList();
+        for (int x = box.minX >> 4; x <= box.maxX >> 4; x++) {
+            for (int z = box.minZ >> 4; z <= box.maxZ >> 4; z++) {
+                chunks.add(ChunkPos.toLong(x, z));
+            }
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,315 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntLists;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.dimdev.dimdoors.DimensionalDoorsInitializer;
+import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.rift.registry.RiftRegistry;
+import org.dimdev.dimdoors.rift.registry.RiftRegistrySnapshot;
+import org.dimdev.dimdoors.util.Location;
+import org.dimdev.dimdoors.util.Metrics;
+import org.dimdev.dimdoors.world.ModDimensions;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
+
+/**
+ * Removes the pockets that can't be reached any more, and deletes the region files they were
+ * in when the server stops. A pocket can be reached if a rift outside of it links to a rift in
+ * it, a player's last used rift is in it, it is a player's private pocket, any of its chunks
+ * are loaded or a player logged out in it. Only pockets that couldn't be reached in two passes
+ * in a row are removed.
+ *
+ * <p>A pass goes through the pocket worlds one after the other. The rifts are read from the
+ * registry snapshot, so a pass can be spread over as many ticks as it needs while only taking
+ * a few hundred microseconds of each. Pockets are checked against the live registry again
+ * right before they are removed.
+ */
+public class PocketCollector {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final List<RegistryKey<World>> WORLDS = Arrays.asList(ModDimensions.PERSONAL, ModDimensions.PUBLIC, ModDimensions.DUNGEON);
+    private static final Metrics.Timer TICK_TIME = Metrics.timer("pocket_collector.tick");
+    private static final Metrics.Counter COLLECTED = Metrics.counter("pocket_collector.collected_pockets");
+    private static final Metrics.Counter DELETED_REGIONS = Metrics.counter("pocket_collector.deleted_regions");
+
+    private enum Phase {
+        IDLE, INDEX, MARK, SWEEP
+    }
+
+    private final Map<RegistryKey<World>, IntSet> candidates = new HashMap<>(); // Pockets that couldn't be reached in the last pass
+    private final Map<RegistryKey<World>, LongSet> regionsToDelete = new HashMap<>();
+    private Phase phase = Phase.IDLE;
+    private long nextPass;
+    private int worldIndex;
+
+    // State of the world being collected
+    private RegistryKey<World> world;
+    private PocketRegistry pockets;
+    private IntIterator pocketIterator;
+    private Iterator<RiftRegistrySnapshot.RiftEntry> riftIterator;
+    private Long2ObjectMap<IntList> pocketsByChunk; // Packed ChunkPos -> pockets whose box is in that chunk
+    private Int2ObjectMap<List<Location>> riftsByPocket;
+    private Set<Location> pointerTargets;
+    private IntSet reachable;
+    private IntSet unreachable;
+
+    public void tick(MinecraftServer server) {
+        int budget = ModConfig.INSTANCE.getPocketsConfig().pocketCollectionBudget;
+        if (budget <= 0) return;
+        if (this.phase == Phase.IDLE) {
+            if (server.getTicks() < this.nextPass) return;
+            this.worldIndex = 0;
+            this.startWorld();
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budget * 1000L;
+        while (this.phase != Phase.IDLE && System.nanoTime() < deadline) {
+            this.step();
+        }
+        if (this.phase == Phase.IDLE) this.nextPass = server.getTicks() + ModConfig.INSTANCE.getPocketsConfig().pocketCollectionInterval;
+        TICK_TIME.recordSince(start);
+    }
+
+    private void startWorld() {
+        this.world = WORLDS.get(this.worldIndex);
+        this.pockets = PocketRegistry.getInstance(this.world);
+        this.pocketIterator = new IntArrayList(this.pockets.getPockets().keySet()).iterator();
+        this.pocketsByChunk = new Long2ObjectOpenHashMap<>();
+        this.riftsByPocket = new Int2ObjectOpenHashMap<>();
+        this.reachable = new IntOpenHashSet();
+        this.unreachable = new IntOpenHashSet();
+        this.phase = Phase.INDEX;
+    }
+
+    private void step() {
+        switch (this.phase) {
+            case INDEX:
+                if (this.pocketIterator.hasNext()) {
+                    this.index(this.pocketIterator.nextInt());
+                } else {
+                    this.riftIterator = RiftRegistry.snapshot().getRifts(this.world).iterator();
+                    this.pointerTargets = RiftRegistry.instance().getPlayerPointerTargets();
+                    this.phase = Phase.MARK;
+                }
+                break;
+            case MARK:
+                if (this.riftIterator.hasNext()) {
+                    this.mark(this.riftIterator.next());
+                } else {
+                    this.pocketIterator = new IntArrayList(this.pockets.getPockets().keySet()).iterator();
+                    this.phase = Phase.SWEEP;
+                }
+                break;
+            case SWEEP:
+                if (this.pocketIterator.hasNext()) {
+                    this.sweep(this.pocketIterator.nextInt());
+                } else {
+                    this.candidates.put(this.world, this.unreachable);
+                    if (++this.worldIndex < WORLDS.size()) {
+                        this.startWorld();
+                    } else {
+                        this.finishPass();
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void finishPass() {
+        this.world = null;
+        this.pockets = null;
+        this.pocketIterator = null;
+        this.riftIterator = null;
+        this.pocketsByChunk = null;
+        this.riftsByPocket = null;
+        this.pointerTargets = null;
+        this.reachable = null;
+        this.unreachable = null;
+        this.phase = Phase.IDLE;
+    }
+
+    private void index(int id) {
+        Pocket pocket = this.pockets.getPocket(id);
+        if (pocket == null) return;
+        BlockBox box = pocket.box;
+        for (int x = box.minX >> 4; x <= box.maxX >> 4; x++) {
+            for (int z = box.minZ >> 4; z <= box.maxZ >> 4; z++) {
+                long chunk = ChunkPos.toLong(x, z);
+                IntList ids = this.pocketsByChunk.get(chunk);
+                if (ids == null) {
+                    ids = new IntArrayList(1);
+                    this.pocketsByChunk.put(chunk, ids);
+                }
+                ids.add(id);
+            }
+        }
+    }
+
+    private void mark(RiftRegistrySnapshot.RiftEntry rift) {
+        for (IntIterator iterator = this.getPocketsAt(rift.location.pos).iterator(); iterator.hasNext(); ) {
+            int id = iterator.nextInt();
+            List<Location> rifts = this.riftsByPocket.get(id);
+            if (rifts == null) {
+                rifts = new ArrayList<>();
+                this.riftsByPocket.put(id, rifts);
+            }
+            rifts.add(rift.location);
+
+            if (this.pointerTargets.contains(rift.location)) {
+                this.reachable.add(id);
+                continue;
+            }
+            BlockBox box = this.pockets.getPocket(id).box;
+            for (Location source : rift.sources) {
+                if (!source.world.equals(this.world) || !box.contains(source.pos)) {
+                    this.reachable.add(id);
+                    break;
+                }
+            }
+        }
+    }
+
+    private IntList getPocketsAt(BlockPos pos) {
+        IntList ids = this.pocketsByChunk.get(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+        if (ids == null) return IntLists.EMPTY_LIST;
+
+        IntList pockets = new IntArrayList(ids.size());
+        for (IntIterator iterator = ids.iterator(); iterator.hasNext(); ) {
+            int id = iterator.nextInt();
+            Pocket pocket = this.pockets.getPocket(id);
+            if (pocket != null && pocket.box.contains(pos)) pockets.add(id);
+        }
+        return pockets;
+    }
+
+    private void sweep(int id) {
+        if (this.reachable.contains(id)) return;
+        Pocket pocket = this.pockets.getPocket(id);
+        if (pocket == null || this.isInUse(pocket)) return;
+
+        IntSet candidates = this.candidates.get(this.world);
+        List<Location> rifts = this.riftsByPocket.getOrDefault(id, Collections.emptyList());
+        if (candidates != null && candidates.contains(id) && !this.isLinkedTo(pocket, rifts)) {
+            this.collect(pocket, rifts);
+        } else {
+            this.unreachable.add(id);
+        }
+    }
+
+    private boolean isInUse(Pocket pocket) {
+        if (this.pockets.isPooled(pocket.id)) return true;
+        if (this.world == ModDimensions.PERSONAL && PrivatePocketData.instance().isPrivatePocket(this.world, pocket.id)) return true;
+
+        ServerWorld world = DimensionalDoorsInitializer.getWorld(this.world);
+        BlockBox box = pocket.box;
+        for (int x = box.minX >> 4; x <= box.maxX >> 4; x++) {
+            for (int z = box.minZ >> 4; z <= box.maxZ >> 4; z++) {
+                if (world.getChunkManager().isChunkLoaded(x, z)) return true;
+            }
+        }
+
+        for (LongIterator iterator = this.pockets.getLoggedOutPlayers().iterator(); iterator.hasNext(); ) {
+            if (box.contains(BlockPos.fromLong(iterator.nextLong()))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the live registry for links into the pocket that were added since the snapshot.
+     */
+    private boolean isLinkedTo(Pocket pocket, List<Location> rifts) {
+        RiftRegistry registry = RiftRegistry.instance();
+        Set<Location> pointerTargets = registry.getPlayerPointerTargets();
+        for (Location rift : rifts) {
+            if (!registry.isRegistered(rift)) continue;
+            if (pointerTargets.contains(rift)) return true;
+            for (Location source : registry.getSources(rift)) {
+                if (!source.world.equals(this.world) || !pocket.box.contains(source.pos)) return true;
+            }
+        }
+        return false;
+    }
+
+    private void collect(Pocket pocket, List<Location> rifts) {
+        LOGGER.debug("Removing unreachable pocket " + pocket.id + " in " + this.world.getValue());
+        RiftRegistry registry = RiftRegistry.instance();
+        registry.beginBatch();
+        try {
+            for (Location rift : rifts) {
+                if (registry.isRegistered(rift)) registry.removeRift(rift);
+            }
+        } finally {
+            registry.endBatch();
+        }
+        this.pockets.removePocket(pocket.id);
+        COLLECTED.increment();
+    }
+
+    /**
+     * Takes the regions to delete while the pocket registries can still be saved. Called when
+     * the server starts stopping.
+     */
+    public void prepareRegionDeletion() {
+        for (RegistryKey<World> world : WORLDS) {
+            LongSet regions = PocketRegistry.getInstance(world).takeReclaimableRegions();
+            if (!regions.isEmpty()) this.regionsToDelete.put(world, regions);
+        }
+    }
+
+    /**
+     * Deletes the region files that no pocket is in. Called once the server has stopped and
+     * closed its region files.
+     */
+    public void deleteRegions(MinecraftServer server) {
+        File root = server.getSavePath(WorldSavePath.ROOT).toFile();
+        for (Map.Entry<RegistryKey<World>, LongSet> entry : this.regionsToDelete.entrySet()) {
+            File directory = DimensionType.getSaveDirectory(entry.getKey(), root);
+            for (LongIterator iterator = entry.getValue().iterator(); iterator.hasNext(); ) {
+                long region = iterator.nextLong();
+                String name = "r." + ChunkPos.getPackedX(region) + "." + ChunkPos.getPackedZ(region) + ".mca";
+                for (String folder : new String[]{"region", "poi"}) {
+                    try {
+                        if (Files.deleteIfExists(new File(new File(directory, folder), name).toPath())) DELETED_REGIONS.increment();
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to delete the region file " + name + " of removed pockets in " + entry.getKey().getValue(), e);
+                    }
+                }
+            }
+        }
+        this.regionsToDelete.clear();
+    }
+}
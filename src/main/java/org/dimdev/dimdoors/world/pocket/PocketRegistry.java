@@ -1,32 +1,78 @@
 package org.dimdev.dimdoors.world.pocket;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongConsumer;
 
 import com.mojang.serialization.Codec;
+import it.unimi.dsi.fastutil.ints.AbstractInt2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 import org.dimdev.dimdoors.DimensionalDoorsInitializer;
 import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.rift.registry.RiftRegistry;
+import org.dimdev.dimdoors.util.Metrics;
 import org.dimdev.dimdoors.util.NbtUtil;
 import org.dimdev.dimdoors.util.math.GridUtil;
 import org.dimdev.dimdoors.world.ModDimensions;
 
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.PersistentState;
 import net.minecraft.world.World;
 
 public class PocketRegistry extends PersistentState {
-    private final Codec<Map<Integer, Pocket>> pocketsCodec = Codec.unboundedMap(Codec.INT, Pocket.CODEC);
+    private static final Codec<Map<Integer, Pocket>> LEGACY_POCKETS_CODEC = Codec.unboundedMap(Codec.INT, Pocket.CODEC); // Keyed by the id as a string
+    private static final Codec<List<Pocket>> POCKETS_CODEC = Pocket.CODEC.listOf(); // The pockets already contain their id
 
     private static final String DATA_NAME = "pocketlib_pockets";
+    private static final Metrics.Timer FROM_TAG_TIME = Metrics.timer("pocket_registry.from_tag");
+    private static final Metrics.Timer TO_TAG_TIME = Metrics.timer("pocket_registry.to_tag");
+    private static final Map<RegistryKey<World>, PocketRegistry> CACHED = new HashMap<>(); // Looked up once per server, cleared when it stops
+
+    static {
+        Metrics.gauge("pocket_registry.personal_pockets", () -> getInstance(ModDimensions.PERSONAL).pockets.size());
+        Metrics.gauge("pocket_registry.public_pockets", () -> getInstance(ModDimensions.PUBLIC).pockets.size());
+        Metrics.gauge("pocket_registry.dungeon_pockets", () -> getInstance(ModDimensions.DUNGEON).pockets.size());
+    }
 
     /*package-private*/ int gridSize; // Determines how much pockets in their dimension are spaced
     /*package-private*/ int privatePocketSize;
     /*package-private*/ int publicPocketSize;
-    /*package-private*/ Map<Integer, Pocket> pockets;
+    /*package-private*/ Int2ObjectMap<Pocket> pockets;
     /*package-private*/ int nextID;
+    /*package-private*/ IntSortedSet freeIDs; // IDs below nextID without a pocket or its blocks, reused lowest first so pockets stay close to the origin
+    /*package-private*/ Object2LongMap<UUID> loggedOutPlayers = new Object2LongOpenHashMap<>(); // Player UUID -> packed BlockPos where they logged out in this world
+    /*package-private*/ LongSet reclaimableRegions = new LongOpenHashSet(); // Packed region x/z that removed pockets were in
+    /*package-private*/ Int2ObjectMap<BlockBox> reclaimingIDs = new Int2ObjectOpenHashMap<>(); // IDs of removed pockets -> their box, free once its regions are deleted
+    /*package-private*/ Int2ObjectLinkedOpenHashMap<String> pool = new Int2ObjectLinkedOpenHashMap<>(); // Placed but unused pocket id -> name of its template, oldest first
+    /*package-private*/ IntSet repaintingPockets = new IntLinkedOpenHashSet(); // Pockets with a repaintProgress, not saved separately
+    /*package-private*/ Long2ObjectMap<IntList> pocketsByChunk = new Long2ObjectOpenHashMap<>(); // Packed ChunkPos -> pockets whose box is in that chunk, not saved
 
     private ServerWorld world;
 
@@ -35,7 +81,8 @@ public class PocketRegistry extends PersistentState {
         this.gridSize = ModConfig.INSTANCE.getPocketsConfig().pocketGridSize;
 
         this.nextID = 0;
-        this.pockets = new HashMap<>();
+        this.pockets = new Int2ObjectOpenHashMap<>();
+        this.freeIDs = new IntRBTreeSet();
     }
 
     public PocketRegistry(String s) {
@@ -44,46 +91,122 @@ public class PocketRegistry extends PersistentState {
 
     @Override
     public void fromTag(CompoundTag tag) {
+        long start = System.nanoTime();
         this.gridSize = tag.getInt("gridSize");
         this.privatePocketSize = tag.getInt("privatePocketSize");
         this.publicPocketSize = tag.getInt("publicPocketSize");
-        this.pockets = NbtUtil.deserialize(tag.get("pockets"), this.pocketsCodec);
+        this.pockets = new Int2ObjectOpenHashMap<>();
+        Tag pocketsTag = tag.get("pockets");
+        if (pocketsTag instanceof ListTag) {
+            for (Pocket pocket : NbtUtil.deserialize(pocketsTag, POCKETS_CODEC)) this.pockets.put(pocket.id, pocket);
+        } else if (pocketsTag != null) {
+            this.pockets.putAll(NbtUtil.deserialize(pocketsTag, LEGACY_POCKETS_CODEC));
+        }
         this.nextID = tag.getInt("nextID");
+
+        // Older saves don't have free IDs, the holes left by removed pockets are found instead
+        this.freeIDs = new IntRBTreeSet();
+        if (tag.contains("freeIDs")) {
+            for (int id : tag.getIntArray("freeIDs")) this.freeIDs.add(id);
+        } else {
+            for (int id = 0; id < this.nextID; id++) {
+                if (!this.pockets.containsKey(id)) this.freeIDs.add(id);
+            }
+        }
+
+        this.loggedOutPlayers = new Object2LongOpenHashMap<>();
+        for (Tag playerTag : tag.getList("loggedOutPlayers", 10)) {
+            this.loggedOutPlayers.put(((CompoundTag) playerTag).getUuid("player"), ((CompoundTag) playerTag).getLong("pos"));
+        }
+        this.reclaimableRegions = new LongOpenHashSet(tag.getLongArray("reclaimableRegions"));
+        this.reclaimingIDs = new Int2ObjectOpenHashMap<>();
+        for (Tag reclaimingTag : tag.getList("reclaimingIDs", 10)) {
+            this.reclaimingIDs.put(((CompoundTag) reclaimingTag).getInt("id"), new BlockBox(((CompoundTag) reclaimingTag).getIntArray("box")));
+        }
+        this.repaintingPockets = new IntLinkedOpenHashSet();
+        for (Pocket pocket : this.pockets.values()) {
+            if (pocket.repaintProgress != -1) this.repaintingPockets.add(pocket.id);
+        }
+        this.pocketsByChunk = new Long2ObjectOpenHashMap<>();
+        for (Pocket pocket : this.pockets.values()) this.index(pocket.id, pocket.box);
+        this.pool = new Int2ObjectLinkedOpenHashMap<>();
+        for (Tag pooledTag : tag.getList("pool", 10)) {
+            this.pool.put(((CompoundTag) pooledTag).getInt("id"), ((CompoundTag) pooledTag).getString("template"));
+        }
+        FROM_TAG_TIME.recordSince(start);
     }
 
     @Override
     public CompoundTag toTag(CompoundTag tag) {
+        long start = System.nanoTime();
         tag.putInt("gridSize", this.gridSize);
         tag.putInt("privatePocketSize", this.privatePocketSize);
         tag.putInt("publicPocketSize", this.publicPocketSize);
-        tag.put("pockets", NbtUtil.serialize(this.pockets, this.pocketsCodec));
+        tag.put("pockets", NbtUtil.serialize(new ArrayList<>(this.pockets.values()), POCKETS_CODEC));
         tag.putInt("nextID", this.nextID);
+        tag.putIntArray("freeIDs", this.freeIDs.toIntArray());
+        ListTag playersTag = new ListTag();
+        for (Object2LongMap.Entry<UUID> entry : this.loggedOutPlayers.object2LongEntrySet()) {
+            CompoundTag playerTag = new CompoundTag();
+            playerTag.putUuid("player", entry.getKey());
+            playerTag.putLong("pos", entry.getLongValue());
+            playersTag.add(playerTag);
+        }
+        tag.put("loggedOutPlayers", playersTag);
+        tag.putLongArray("reclaimableRegions", this.reclaimableRegions.toLongArray());
+        ListTag reclaimingTag = new ListTag();
+        for (Int2ObjectMap.Entry<BlockBox> entry : this.reclaimingIDs.int2ObjectEntrySet()) {
+            CompoundTag idTag = new CompoundTag();
+            idTag.putInt("id", entry.getIntKey());
+            idTag.put("box", entry.getValue().toNbt());
+            reclaimingTag.add(idTag);
+        }
+        tag.put("reclaimingIDs", reclaimingTag);
+        ListTag poolTag = new ListTag();
+        for (Int2ObjectMap.Entry<String> entry : this.pool.int2ObjectEntrySet()) {
+            CompoundTag pooledTag = new CompoundTag();
+            pooledTag.putInt("id", entry.getIntKey());
+            pooledTag.putString("template", entry.getValue());
+            poolTag.add(pooledTag);
+        }
+        tag.put("pool", poolTag);
+        TO_TAG_TIME.recordSince(start);
         return tag;
     }
 
     public static PocketRegistry getInstance(RegistryKey<World> key) {
+        PocketRegistry instance = CACHED.get(key);
+        if (instance != null) return instance;
+
         ServerWorld world = DimensionalDoorsInitializer.getWorld(key);
 
         if (!(ModDimensions.isDimDoorsPocketDimension(world))) {
             throw new UnsupportedOperationException("PocketRegistry is only available for pocket dimensions!");
         }
 
-        PocketRegistry instance = world.getPersistentStateManager().getOrCreate(PocketRegistry::new, DATA_NAME);
+        instance = world.getPersistentStateManager().getOrCreate(PocketRegistry::new, DATA_NAME);
 
+        // The pockets' world isn't saved, it is set once when the registry is loaded
         instance.world = world;
         for (Pocket pocket : instance.pockets.values()) {
             pocket.world = key;
         }
 
+        CACHED.put(key, instance);
         return instance;
     }
 
+    public static void clearInstances() {
+        CACHED.clear();
+    }
+
     /**
      * Create a new blank pocket.
      *
      * @return The newly created pockets
      */
     public Pocket newPocket() {
+        if (!this.freeIDs.isEmpty()) return this.newPocket(this.freeIDs.firstInt());
         Pocket pocket = null;
         while (pocket == null) pocket = this.newPocket(this.nextID++);
         return pocket;
@@ -99,16 +222,134 @@ public class PocketRegistry extends PersistentState {
         GridUtil.GridPos pos = this.idToGridPos(id);
         Pocket pocket = new Pocket(id, this.world.getRegistryKey(), pos.x, pos.z);
         this.pockets.put(id, pocket);
+        this.index(id, pocket.box);
+        this.freeIDs.remove(id);
+        this.reclaimingIDs.remove(id);
+        for (; this.nextID < id; this.nextID++) this.freeIDs.add(this.nextID); // Skipped IDs can be used later
         if (id >= this.nextID) this.nextID = id + 1;
         this.markDirty();
         return pocket;
     }
 
+    /**
+     * Removes a pocket. The pocket's rifts must have been removed already. The region files it
+     * was in are deleted when the server stops if no other pocket is in them by then. Its blocks
+     * and entities stay until then, so its ID, and with it its place in the grid, is only given
+     * to a new pocket once its region files are deleted.
+     */
     public void removePocket(int id) {
-        this.pockets.remove(id);
+        Pocket pocket = this.pockets.remove(id);
+        if (pocket == null) return;
+        this.unindex(id, pocket.box);
+        RiftRegistry.instance().removePocketEntrances(pocket);
+        if (id < this.nextID) this.reclaimingIDs.put(id, pocket.box);
+        forEachRegion(pocket.box, this.reclaimableRegions::add);
+        this.repaintingPockets.remove(id);
+        this.markDirty();
+    }
+
+    /**
+     * Removes the regions that no pocket is in from the reclaimable regions, and frees the IDs
+     * of the removed pockets that were only in such regions. The files of the regions must be
+     * deleted before the world is loaded again.
+     *
+     * @return The packed x/z of the regions whose files can be deleted
+     */
+    public LongSet takeReclaimableRegions() {
+        if (this.reclaimableRegions.isEmpty() && this.reclaimingIDs.isEmpty()) return new LongOpenHashSet();
+
+        LongSet usedRegions = new LongOpenHashSet();
+        for (Pocket pocket : this.pockets.values()) forEachRegion(pocket.box, usedRegions::add);
+
+        LongSet regions = new LongOpenHashSet();
+        for (LongIterator iterator = this.reclaimableRegions.iterator(); iterator.hasNext(); ) {
+            long region = iterator.nextLong();
+            if (usedRegions.contains(region)) continue;
+            regions.add(region);
+            iterator.remove();
+        }
+
+        for (ObjectIterator<Int2ObjectMap.Entry<BlockBox>> iterator = this.reclaimingIDs.int2ObjectEntrySet().iterator(); iterator.hasNext(); ) {
+            Int2ObjectMap.Entry<BlockBox> entry = iterator.next();
+            if (isInAnyRegion(entry.getValue(), usedRegions)) continue;
+            this.freeIDs.add(entry.getIntKey());
+            iterator.remove();
+            this.markDirty();
+        }
+        if (!regions.isEmpty()) this.markDirty();
+        return regions;
+    }
+
+    private static boolean isInAnyRegion(BlockBox box, LongSet regions) {
+        for (int x = box.minX >> 9; x <= box.maxX >> 9; x++) {
+            for (int z = box.minZ >> 9; z <= box.maxZ >> 9; z++) {
+                if (regions.contains(ChunkPos.toLong(x, z))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static void forEachRegion(BlockBox box, LongConsumer consumer) {
+        for (int x = box.minX >> 9; x <= box.maxX >> 9; x++) {
+            for (int z = box.minZ >> 9; z <= box.maxZ >> 9; z++) {
+                consumer.accept(ChunkPos.toLong(x, z));
+            }
+        }
+    }
+
+    /**
+     * Adds a pocket that was placed ahead of time to the pool, to be set up when it is needed.
+     *
+     * @param template The name of the template the pocket was placed from
+     */
+    public void addToPool(Pocket pocket, String template) {
+        this.pool.put(pocket.id, template);
         this.markDirty();
     }
 
+    /**
+     * Takes the oldest pocket from the pool.
+     *
+     * @return The pocket's id and the name of its template, or null if the pool is empty
+     */
+    public Int2ObjectMap.Entry<String> takeFromPool() {
+        if (this.pool.isEmpty()) return null;
+        int id = this.pool.firstIntKey();
+        String template = this.pool.removeFirst();
+        this.markDirty();
+        return new AbstractInt2ObjectMap.BasicEntry<>(id, template);
+    }
+
+    public boolean isPooled(int id) {
+        return this.pool.containsKey(id);
+    }
+
+    public int getPoolSize() {
+        return this.pool.size();
+    }
+
+    /**
+     * Remembers where a player logged out, so that the pocket they are in isn't removed while
+     * they are offline.
+     */
+    public void playerLoggedOut(UUID player, BlockPos pos) {
+        this.loggedOutPlayers.put(player, pos.asLong());
+        this.markDirty();
+    }
+
+    public void playerLoggedIn(UUID player) {
+        if (!this.loggedOutPlayers.containsKey(player)) return;
+        this.loggedOutPlayers.removeLong(player);
+        this.markDirty();
+    }
+
+    /**
+     * @return The packed positions of the players that logged out in this world
+     */
+    public LongCollection getLoggedOutPlayers() {
+        return this.loggedOutPlayers.values();
+    }
+
     /**
      * Gets the pocket with a certain ID, or null if there is no pocket with that ID.
      *
@@ -152,6 +393,66 @@ public class PocketRegistry extends PersistentState {
         return this.getPocket(this.posToID(pos));
     }
 
+    /**
+     * Looks up the pocket whose box contains a position in the index of the pockets by chunk,
+     * rather than relying on the grid, since pocket boxes aren't aligned to it.
+     */
+    public Pocket findPocketContaining(BlockPos pos) {
+        IntList ids = this.pocketsByChunk.get(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+        if (ids == null) return null;
+        for (int i = 0; i < ids.size(); i++) {
+            Pocket pocket = this.pockets.get(ids.getInt(i));
+            if (pocket != null && pocket.isInBounds(pos)) return pocket;
+        }
+        return null;
+    }
+
+    /**
+     * Moves a pocket whose box changed in the index of the pockets by chunk.
+     */
+    void boxChanged(Pocket pocket, BlockBox previousBox) {
+        if (this.pockets.get(pocket.id) != pocket) return;
+        this.unindex(pocket.id, previousBox);
+        this.index(pocket.id, pocket.box);
+    }
+
+    private void index(int id, BlockBox box) {
+        for (int x = box.minX >> 4; x <= box.maxX >> 4; x++) {
+            for (int z = box.minZ >> 4; z <= box.maxZ >> 4; z++) {
+                this.pocketsByChunk.computeIfAbsent(ChunkPos.toLong(x, z), key -> new IntArrayList(1)).add(id);
+            }
+        }
+    }
+
+    private void unindex(int id, BlockBox box) {
+        for (int x = box.minX >> 4; x <= box.maxX >> 4; x++) {
+            for (int z = box.minZ >> 4; z <= box.maxZ >> 4; z++) {
+                long chunk = ChunkPos.toLong(x, z);
+                IntList ids = this.pocketsByChunk.get(chunk);
+                if (ids == null) continue;
+                ids.rem(id);
+                if (ids.isEmpty()) this.pocketsByChunk.remove(chunk);
+            }
+        }
+    }
+
+    /**
+     * Starts repainting the walls of a pocket in its color, or starts over if it was being
+     * repainted already.
+     */
+    public void repaint(Pocket pocket) {
+        pocket.repaintProgress = 0;
+        this.repaintingPockets.add(pocket.id);
+        this.markDirty();
+    }
+
+    /**
+     * @return The IDs of the pockets whose walls are being repainted, oldest first
+     */
+    public IntSet getRepaintingPockets() {
+        return this.repaintingPockets;
+    }
+
     public boolean isWithinPocketBounds(BlockPos pos) {
         Pocket pocket = this.getPocketAt(pos);
         return pocket != null && pocket.isInBounds(pos);
@@ -169,7 +470,7 @@ public class PocketRegistry extends PersistentState {
         return this.publicPocketSize;
     }
 
-    public Map<Integer, Pocket> getPockets() {
+    public Int2ObjectMap<Pocket> getPockets() {
         return this.pockets;
     }
 
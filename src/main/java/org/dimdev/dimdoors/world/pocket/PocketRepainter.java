@@ -0,0 +1,120 @@
+package org.dimdev.dimdoors.world.pocket;
+
+import java.util.Arrays;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.dimdev.dimdoors.DimensionalDoorsInitializer;
+import org.dimdev.dimdoors.ModConfig;
+import org.dimdev.dimdoors.block.ModBlocks;
+import org.dimdev.dimdoors.util.Metrics;
+import org.dimdev.dimdoors.world.ModDimensions;
+
+import net.minecraft.block.Block;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.DyeColor;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+
+/**
+ * Repaints the fabric in the walls of dyed pockets a few chunk sections at a time, within a
+ * time budget per tick. A pocket's progress is saved with it, so repainting continues where
+ * it stopped after a restart. Only the outer layers of a pocket are visited, and fabric keeps
+ * its kind: ancient fabric is replaced by ancient fabric and fabric by fabric.
+ */
+public final class PocketRepainter {
+    private static final List<RegistryKey<World>> WORLDS = Arrays.asList(ModDimensions.PERSONAL, ModDimensions.PUBLIC, ModDimensions.DUNGEON);
+    private static final int WALL_LAYERS = 5; // The outer wall and the four layers of fabric inside it
+    private static final Metrics.Timer TICK_TIME = Metrics.timer("pocket_repainter.tick");
+    private static final Metrics.Counter REPAINTED_BLOCKS = Metrics.counter("pocket_repainter.repainted_blocks");
+
+    private PocketRepainter() {
+    }
+
+    public static void tick() {
+        int budget = ModConfig.INSTANCE.getPocketsConfig().pocketRepaintBudget;
+        if (budget <= 0) return;
+
+        long start = System.nanoTime();
+        long deadline = start + budget * 1_000_000L;
+        boolean worked = false;
+        for (RegistryKey<World> world : WORLDS) {
+            PocketRegistry registry = PocketRegistry.getInstance(world);
+            if (registry.getRepaintingPockets().isEmpty()) continue;
+
+            ServerWorld serverWorld = DimensionalDoorsInitializer.getWorld(world);
+            for (IntIterator iterator = registry.getRepaintingPockets().iterator(); iterator.hasNext(); ) {
+                Pocket pocket = registry.getPocket(iterator.nextInt());
+                while (pocket != null && pocket.repaintProgress != -1 && System.nanoTime() < deadline) {
+                    pocket.repaintProgress = repaintSection(serverWorld, pocket, pocket.repaintProgress);
+                    worked = true;
+                }
+                if (pocket == null || pocket.repaintProgress == -1) iterator.remove();
+                if (System.nanoTime() >= deadline) break;
+            }
+            registry.markDirty();
+            if (System.nanoTime() >= deadline) break;
+        }
+        if (worked) TICK_TIME.recordSince(start);
+    }
+
+    /**
+     * Repaints the walls in one chunk section of a pocket. Sections are numbered column by
+     * column, so that each chunk is only loaded once.
+     *
+     * @return The index of the next section, or -1 if this was the last one
+     */
+    private static int repaintSection(ServerWorld world, Pocket pocket, int section) {
+        DyeColor color = pocket.dyeColor.getColor();
+        if (color == null) return -1;
+        Block fabric = ModBlocks.getFabric(color);
+        Block ancientFabric = ModBlocks.getAncientFabric(color);
+
+        BlockBox box = pocket.box;
+        int sectionsY = (box.maxY >> 4) - (box.minY >> 4) + 1;
+        int sectionsZ = (box.maxZ >> 4) - (box.minZ >> 4) + 1;
+        int sectionsX = (box.maxX >> 4) - (box.minX >> 4) + 1;
+        if (section >= sectionsX * sectionsY * sectionsZ) return -1;
+
+        int sectionY = (box.minY >> 4) + section % sectionsY;
+        int sectionZ = (box.minZ >> 4) + section / sectionsY % sectionsZ;
+        int sectionX = (box.minX >> 4) + section / sectionsY / sectionsZ;
+
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        int repainted = 0;
+        for (int y = Math.max(box.minY, sectionY << 4); y <= Math.min(box.maxY, (sectionY << 4) + 15); y++) {
+            int layerY = getLayer(y, box.minY, box.maxY);
+            for (int z = Math.max(box.minZ, sectionZ << 4); z <= Math.min(box.maxZ, (sectionZ << 4) + 15); z++) {
+                int layerYZ = Math.min(layerY, getLayer(z, box.minZ, box.maxZ));
+                for (int x = Math.max(box.minX, sectionX << 4); x <= Math.min(box.maxX, (sectionX << 4) + 15); x++) {
+                    if (Math.min(layerYZ, getLayer(x, box.minX, box.maxX)) >= WALL_LAYERS) {
+                        // Skip the inside of the pocket, up to the walls on the other side
+                        x = Math.max(x, box.maxX - 1 - WALL_LAYERS);
+                        continue;
+                    }
+
+                    Block block = world.getBlockState(pos.set(x, y, z)).getBlock();
+                    if (block != fabric && ModBlocks.isFabric(block)) {
+                        world.setBlockState(pos, fabric.getDefaultState(), 2);
+                        repainted++;
+                    } else if (block != ancientFabric && ModBlocks.isAncientFabric(block)) {
+                        world.setBlockState(pos, ancientFabric.getDefaultState(), 2);
+                        repainted++;
+                    }
+                }
+            }
+        }
+        REPAINTED_BLOCKS.add(repainted);
+        return section + 1 < sectionsX * sectionsY * sectionsZ ? section + 1 : -1;
+    }
+
+    /**
+     * @return How deep into the walls a coordinate is, 0 being the outer wall. Pocket boxes
+     * end one block past the schematic placed in them.
+     */
+    private static int getLayer(int coordinate, int min, int max) {
+        return Math.max(0, Math.min(coordinate - min, max - 1 - coordinate));
+    }
+}
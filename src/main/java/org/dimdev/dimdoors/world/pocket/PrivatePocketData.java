@@ -1,45 +1,73 @@
 package org.dimdev.dimdoors.world.pocket;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.ObjIntConsumer;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 import org.dimdev.dimdoors.DimensionalDoorsInitializer;
+import org.dimdev.dimdoors.util.Metrics;
 import org.dimdev.dimdoors.util.NbtUtil;
 
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.util.Identifier;
 import net.minecraft.util.dynamic.DynamicSerializableUuid;
+import net.minecraft.util.registry.Registry;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.PersistentState;
 import net.minecraft.world.World;
 
 import static net.minecraft.world.World.OVERWORLD;
 
+/**
+ * The private pocket of each player. Pockets are indexed both ways by a key packing the index
+ * of their world and their ID into a long, so that finding a player's pocket and a pocket's
+ * owner are both a single lookup.
+ */
 public class PrivatePocketData extends PersistentState {
-    protected static class PocketInfo {
-        public static final Codec<PocketInfo> CODEC = RecordCodecBuilder.create(instance -> {
+    private static class LegacyPocketInfo {
+        public static final Codec<LegacyPocketInfo> CODEC = RecordCodecBuilder.create(instance -> {
             return instance.group(
                     World.CODEC.fieldOf("world").forGetter(a -> a.world),
                     Codec.INT.fieldOf("id").forGetter(a -> a.id)
-            ).apply(instance, PocketInfo::new);
+            ).apply(instance, LegacyPocketInfo::new);
         });
 
         public final RegistryKey<World> world;
         public final int id;
 
-        public PocketInfo(RegistryKey<World> world, int id) {
+        public LegacyPocketInfo(RegistryKey<World> world, int id) {
             this.world = world;
             this.id = id;
         }
     }
 
-    public static final Codec<BiMap<UUID, PocketInfo>> CODEC = Codec.unboundedMap(DynamicSerializableUuid.CODEC, PocketInfo.CODEC).xmap(HashBiMap::create, a -> a);
+    // Saves from before the pockets were saved as packed keys
+    private static final Codec<Map<UUID, LegacyPocketInfo>> LEGACY_CODEC = Codec.unboundedMap(DynamicSerializableUuid.CODEC, LegacyPocketInfo.CODEC);
 
     private static final String DATA_NAME = "dimdoors_private_pockets";
+    private static final Metrics.Timer FROM_TAG_TIME = Metrics.timer("private_pocket_data.from_tag");
+    private static final Metrics.Timer TO_TAG_TIME = Metrics.timer("private_pocket_data.to_tag");
 
-    protected BiMap<UUID, PocketInfo> privatePocketMap = HashBiMap.create(); // Player UUID -> Pocket Info TODO: fix AnnotatedNBT and use UUID rather than String
+    static {
+        Metrics.gauge("private_pocket_data.private_pockets", () -> instance().pockets.size());
+    }
+
+    private static PrivatePocketData cached; // Looked up once per server, cleared when it stops
+
+    private List<RegistryKey<World>> worlds = new ArrayList<>(); // World index -> world, the index is the high half of the keys
+    private Object2LongMap<UUID> pockets = newPocketMap(); // Player UUID -> packed key of their pocket
+    private Long2ObjectMap<UUID> owners = new Long2ObjectOpenHashMap<>(); // Packed key of a pocket -> its owner's UUID
 
     public PrivatePocketData(String name) {
         super(name);
@@ -50,32 +78,143 @@ public class PrivatePocketData extends PersistentState {
     }
 
     public static PrivatePocketData instance() {
-        return DimensionalDoorsInitializer.getWorld(OVERWORLD).getPersistentStateManager().getOrCreate(PrivatePocketData::new, DATA_NAME);
+        PrivatePocketData data = cached;
+        if (data == null) {
+            data = DimensionalDoorsInitializer.getWorld(OVERWORLD).getPersistentStateManager().getOrCreate(PrivatePocketData::new, DATA_NAME);
+            cached = data;
+        }
+        return data;
+    }
+
+    public static void clearInstance() {
+        cached = null;
+    }
+
+    private static Object2LongMap<UUID> newPocketMap() {
+        Object2LongMap<UUID> pockets = new Object2LongOpenHashMap<>();
+        pockets.defaultReturnValue(-1); // A world index of -1 is never used
+        return pockets;
+    }
+
+    private static long pack(int worldIndex, int id) {
+        return (long) worldIndex << 32 | id & 0xFFFFFFFFL;
+    }
+
+    private static int unpackWorldIndex(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int unpackID(long key) {
+        return (int) key;
+    }
+
+    /**
+     * @return The index of a world, or -1 if no private pocket is in it
+     */
+    private int getWorldIndex(RegistryKey<World> world) {
+        return this.worlds.indexOf(world); // There is only ever one or two worlds
+    }
+
+    private long getKey(RegistryKey<World> world, int id) {
+        int worldIndex = this.getWorldIndex(world);
+        return worldIndex == -1 ? -1 : pack(worldIndex, id);
     }
 
     @Override
     public void fromTag(CompoundTag nbt) {
-        this.privatePocketMap = NbtUtil.deserialize(nbt.get("privatePocketMap"), CODEC);
+        long start = System.nanoTime();
+        this.worlds = new ArrayList<>();
+        this.pockets = newPocketMap();
+        this.owners = new Long2ObjectOpenHashMap<>();
+
+        if (nbt.contains("privatePocketMap")) {
+            Map<UUID, LegacyPocketInfo> legacyPockets = NbtUtil.deserialize(nbt.get("privatePocketMap"), LEGACY_CODEC);
+            for (Map.Entry<UUID, LegacyPocketInfo> entry : legacyPockets.entrySet()) {
+                this.put(entry.getKey(), entry.getValue().world, entry.getValue().id);
+            }
+        } else {
+            for (Tag worldTag : nbt.getList("worlds", 8)) {
+                this.worlds.add(RegistryKey.of(Registry.DIMENSION, new Identifier(worldTag.asString())));
+            }
+            long[] players = nbt.getLongArray("players"); // Most and least significant bits of each UUID
+            long[] keys = nbt.getLongArray("pockets");
+            for (int i = 0; i < keys.length; i++) {
+                UUID player = new UUID(players[2 * i], players[2 * i + 1]);
+                this.pockets.put(player, keys[i]);
+                this.owners.put(keys[i], player);
+            }
+        }
+        FROM_TAG_TIME.recordSince(start);
     }
 
     @Override
     public CompoundTag toTag(CompoundTag nbt) {
-        nbt.put("privatePocketMap", NbtUtil.serialize(this.privatePocketMap, CODEC));
+        long start = System.nanoTime();
+        ListTag worldsTag = new ListTag();
+        for (RegistryKey<World> world : this.worlds) worldsTag.add(StringTag.of(world.getValue().toString()));
+        nbt.put("worlds", worldsTag);
+
+        long[] players = new long[2 * this.pockets.size()];
+        long[] keys = new long[this.pockets.size()];
+        int i = 0;
+        for (Object2LongMap.Entry<UUID> entry : this.pockets.object2LongEntrySet()) {
+            players[2 * i] = entry.getKey().getMostSignificantBits();
+            players[2 * i + 1] = entry.getKey().getLeastSignificantBits();
+            keys[i++] = entry.getLongValue();
+        }
+        nbt.putLongArray("players", players);
+        nbt.putLongArray("pockets", keys);
+        TO_TAG_TIME.recordSince(start);
         return nbt;
     }
 
+    /**
+     * @return Whether a pocket is some player's private pocket
+     */
+    public boolean isPrivatePocket(RegistryKey<World> world, int id) {
+        long key = this.getKey(world, id);
+        return key != -1 && this.owners.containsKey(key);
+    }
+
+    /**
+     * Calls the action with the owner and ID of each private pocket in a world.
+     */
+    public void forEachPrivatePocket(RegistryKey<World> world, ObjIntConsumer<UUID> action) {
+        int worldIndex = this.getWorldIndex(world);
+        if (worldIndex == -1) return;
+        for (Long2ObjectMap.Entry<UUID> entry : this.owners.long2ObjectEntrySet()) {
+            if (unpackWorldIndex(entry.getLongKey()) == worldIndex) action.accept(entry.getValue(), unpackID(entry.getLongKey()));
+        }
+    }
+
     public Pocket getPrivatePocket(UUID playerUUID) {
-        PocketInfo pocket = this.privatePocketMap.get(playerUUID);
-        if (pocket == null) return null;
-        return PocketRegistry.getInstance(pocket.world).getPocket(pocket.id);
+        long key = this.pockets.getLong(playerUUID);
+        if (key == -1) return null;
+        return PocketRegistry.getInstance(this.worlds.get(unpackWorldIndex(key))).getPocket(unpackID(key));
     }
 
     public void setPrivatePocketID(UUID playerUUID, Pocket pocket) {
-        this.privatePocketMap.put(playerUUID, new PocketInfo(pocket.world, pocket.id));
+        this.put(playerUUID, pocket.world, pocket.id);
         this.markDirty();
     }
 
+    private void put(UUID player, RegistryKey<World> world, int id) {
+        int worldIndex = this.getWorldIndex(world);
+        if (worldIndex == -1) {
+            worldIndex = this.worlds.size();
+            this.worlds.add(world);
+        }
+        long key = pack(worldIndex, id);
+
+        // Both the player's previous pocket and the pocket's previous owner are forgotten
+        long previousKey = this.pockets.put(player, key);
+        if (previousKey != -1) this.owners.remove(previousKey);
+        UUID previousOwner = this.owners.put(key, player);
+        if (previousOwner != null && !previousOwner.equals(player)) this.pockets.removeLong(previousOwner);
+    }
+
     public UUID getPrivatePocketOwner(Pocket pocket) {
-        return this.privatePocketMap.inverse().get(new PocketInfo(pocket.world, pocket.id));
+        long key = this.getKey(pocket.world, pocket.id);
+        return key == -1 ? null : this.owners.get(key);
     }
 }
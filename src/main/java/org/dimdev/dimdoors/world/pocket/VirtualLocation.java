@@ -1,5 +1,7 @@
 package org.dimdev.dimdoors.world.pocket;
 
+import java.util.Objects;
+
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import org.dimdev.dimdoors.DimensionalDoorsInitializer;
@@ -59,9 +61,9 @@ public class VirtualLocation {
         VirtualLocation virtualLocation = null;
 
         if (ModDimensions.isDimDoorsPocketDimension(location.world)) {
-            Pocket pocket = PocketRegistry.getInstance(location.world).getPocketAt(location.pos);
+            Pocket pocket = PocketRegistry.getInstance(location.world).findPocketContaining(location.pos); // The pocket the rift registry indexes the location under
             if (pocket != null) {
-                virtualLocation = pocket.virtualLocation; // TODO: pockets-relative coordinates
+                virtualLocation = pocket.getVirtualLocation(); // TODO: pockets-relative coordinates
             } else {
                 virtualLocation = null; // TODO: door was placed in a pockets dim but outside of a pockets...
             }
@@ -90,6 +92,19 @@ public class VirtualLocation {
         return new Location(world, pos);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof VirtualLocation)) return false;
+        VirtualLocation that = (VirtualLocation) o;
+        return this.x == that.x && this.z == that.z && this.depth == that.depth && Objects.equals(this.world, that.world);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.world, this.x, this.z, this.depth);
+    }
+
     public RegistryKey<World> getWorld() {
         return this.world;
     }